@@ -0,0 +1,291 @@
+package part1;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Deduplicating encrypted store. Files are cut into content-defined chunks
+ * with a gear rolling hash, so an edit only changes the chunks around it.
+ * Each chunk is named by an HMAC-SHA256 of its plaintext, encrypted once with
+ * AES/GCM under a random IV and stored as {@code chunks/<ab>/<id>}. A file is
+ * recorded as a recipe listing its chunk IDs, so storing a file again only
+ * writes the chunks that changed.
+ * <p>
+ * The chunk-ID, encryption and gear-table keys are all derived from the one
+ * AES key, so chunk boundaries and IDs reveal nothing without it. The first
+ * {@link #store} records an HMAC of the key in {@code key-check}, and the store
+ * then refuses any other key, which would silently stop deduplicating and
+ * leave old recipes unreadable.
+ * Author: Hamish Burke
+ */
+public class ChunkStore {
+    private static final Logger LOG = Logger.getLogger(ChunkStore.class.getSimpleName());
+    private static final String RECIPE_HEADER = "# part1 chunk recipe v1";
+    private static final String KEY_CHECK = "key-check";
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    private static final int MASK_BITS = 13; // 8 KiB average chunk past the minimum
+    private static final long MASK = ((1L << MASK_BITS) - 1) << (64 - MASK_BITS); // high bits see the last 64 bytes
+    private static final int IV_SIZE = 12;
+    private static final int TAG_BITS = 128;
+
+    private final Path directory;
+    private final Path chunks;
+    private final String keyCheck;
+    private final Mac idMac;
+    private final SecretKeySpec chunkKey;
+    private final Cipher cipher;
+    private final long[] gear = new long[256];
+    private final SecureRandom sr = new SecureRandom();
+    private final HexFormat hex = HexFormat.of();
+
+    /**
+     * Counts from storing one file.
+     */
+    public record Stats(long chunks, long newChunks, long bytes, long newBytes) {
+    }
+
+    /**
+     * @param directory Store directory, created by the first {@link #store}
+     * @param key       AES key the store's keys are derived from
+     * @throws IOException If the store was created with a different key
+     */
+    public ChunkStore(Path directory, byte[] key) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, IOException {
+        this.directory = directory;
+        this.chunks = directory.resolve("chunks");
+        Mac derive = Mac.getInstance("HmacSHA256");
+        derive.init(new SecretKeySpec(key, "HmacSHA256"));
+        this.keyCheck = hex.formatHex(derive.doFinal(KEY_CHECK.getBytes(StandardCharsets.US_ASCII)));
+        checkKey();
+
+        this.idMac = Mac.getInstance("HmacSHA256");
+        idMac.init(new SecretKeySpec(derive.doFinal("chunk-id".getBytes(StandardCharsets.US_ASCII)), "HmacSHA256"));
+        this.chunkKey = new SecretKeySpec(derive.doFinal("chunk-encryption".getBytes(StandardCharsets.US_ASCII)), 0, 16, "AES");
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+        byte[] gearSeed = derive.doFinal("chunk-gear".getBytes(StandardCharsets.US_ASCII));
+        SplittableRandom random = new SplittableRandom(ByteBuffer.wrap(gearSeed).getLong());
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * @param directory Store directory
+     * @return True if something has already been stored there, under some key
+     */
+    public static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(KEY_CHECK)) || Files.exists(directory.resolve("chunks"));
+    }
+
+    /**
+     * Stores the chunks of a file that are not already in the store and writes its recipe.
+     *
+     * @param inputFile File to back up
+     * @param recipe    Where to write the list of chunk IDs
+     * @return What was stored
+     * @throws IOException
+     */
+    public Stats store(Path inputFile, Path recipe) throws IOException {
+        if (!Files.exists(directory.resolve(KEY_CHECK))) {
+            Files.createDirectories(directory);
+            Files.writeString(directory.resolve(KEY_CHECK), keyCheck + "\n", StandardCharsets.US_ASCII);
+        }
+        long count = 0;
+        long newChunks = 0;
+        long bytes = 0;
+        long newBytes = 0;
+        Path tmpRecipe = recipe.resolveSibling(recipe.getFileName() + ".tmp");
+        try (InputStream in = Files.newInputStream(inputFile);
+             BufferedWriter out = Files.newBufferedWriter(tmpRecipe, StandardCharsets.UTF_8)) {
+            out.write(RECIPE_HEADER);
+            out.newLine();
+
+            Chunker chunker = new Chunker(in);
+            int length;
+            while ((length = chunker.next()) > 0) {
+                idMac.update(chunker.data, chunker.start, length);
+                byte[] id = idMac.doFinal();
+                String name = hex.formatHex(id);
+                Path file = chunkPath(name);
+                if (!Files.exists(file)) {
+                    newBytes += write(file, id, chunker.data, chunker.start, length);
+                    newChunks++;
+                }
+                out.write(name + " " + length);
+                out.newLine();
+                count++;
+                bytes += length;
+            }
+        }
+        Files.move(tmpRecipe, recipe, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Stored " + inputFile + ": " + count + " chunks, " + newChunks + " new");
+        return new Stats(count, newChunks, bytes, newBytes);
+    }
+
+    /**
+     * Reassembles a file from its recipe. The file only appears once every chunk
+     * has been read and authenticated.
+     *
+     * @param recipe     List of chunk IDs written by {@link #store}
+     * @param outputFile Where to write the file
+     * @throws IOException If there is no store, or a chunk is missing, corrupt or was stored under another key
+     */
+    public void restore(Path recipe, Path outputFile) throws IOException {
+        if (!Files.exists(directory.resolve(KEY_CHECK))) {
+            throw new IOException("No chunk store at " + directory);
+        }
+        Path tmpOutput = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+        try (BufferedReader in = Files.newBufferedReader(recipe, StandardCharsets.UTF_8);
+             OutputStream out = Files.newOutputStream(tmpOutput)) {
+            if (!RECIPE_HEADER.equals(in.readLine())) {
+                throw new IOException("Not a chunk recipe: " + recipe);
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] ref = line.split(" ");
+                byte[] chunk = read(ref[0]);
+                if (chunk.length != Integer.parseInt(ref[1])) {
+                    throw new IOException("Chunk " + ref[0] + " has the wrong length");
+                }
+                out.write(chunk);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpOutput);
+            throw e;
+        }
+        Files.move(tmpOutput, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Compares the key's check value with the one recorded when the store was created.
+     */
+    private void checkKey() throws IOException {
+        Path file = directory.resolve(KEY_CHECK);
+        if (Files.exists(file)) {
+            String stored = Files.readString(file, StandardCharsets.US_ASCII).trim();
+            if (!MessageDigest.isEqual(stored.getBytes(StandardCharsets.US_ASCII), keyCheck.getBytes(StandardCharsets.US_ASCII))) {
+                throw new IOException("Store " + directory + " was created with a different key");
+            }
+        }
+    }
+
+    private Path chunkPath(String name) {
+        return chunks.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    /**
+     * Encrypts a chunk as IV | ciphertext | tag, with its ID as associated data
+     * so one chunk cannot be swapped for another.
+     *
+     * @return Bytes written
+     */
+    private int write(Path file, byte[] id, byte[] data, int offset, int length) throws IOException {
+        byte[] iv = new byte[IV_SIZE];
+        sr.nextBytes(iv);
+        byte[] sealed;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, chunkKey, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(id);
+            sealed = new byte[IV_SIZE + cipher.getOutputSize(length)];
+            System.arraycopy(iv, 0, sealed, 0, IV_SIZE);
+            cipher.doFinal(data, offset, length, sealed, IV_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt chunk", e);
+        }
+
+        // Write then rename, so a crash never leaves a partial chunk under its ID
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, sealed);
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.delete(tmp); // stored concurrently by another backup
+        }
+        return sealed.length;
+    }
+
+    private byte[] read(String name) throws IOException {
+        byte[] sealed = Files.readAllBytes(chunkPath(name));
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, chunkKey, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_SIZE));
+            cipher.updateAAD(hex.parseHex(name));
+            return cipher.doFinal(sealed, IV_SIZE, sealed.length - IV_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + name + " is corrupt or was stored under a different key", e);
+        }
+    }
+
+    /**
+     * Cuts a stream where the rolling hash of the last 64 bytes matches the mask,
+     * keeping chunks between {@value #MIN_CHUNK} and {@value #MAX_CHUNK} bytes.
+     */
+    private final class Chunker {
+        private final InputStream in;
+        private final byte[] data = new byte[4 * MAX_CHUNK];
+        private int start; // first byte of the current chunk
+        private int end;   // end of the bytes read so far
+        private int next;  // where the next chunk starts
+        private boolean eof;
+
+        Chunker(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return Length of the next chunk at {@link #start} in {@link #data}, or 0 at the end
+         */
+        int next() throws IOException {
+            start = next;
+            if (end - start < MAX_CHUNK && !eof) {
+                System.arraycopy(data, start, data, 0, end - start);
+                end -= start;
+                start = 0;
+                while (end < data.length && !eof) {
+                    int n = in.read(data, end, data.length - end);
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        end += n;
+                    }
+                }
+            }
+
+            int limit = Math.min(start + MAX_CHUNK, end);
+            int cut = limit;
+            long hash = 0;
+            for (int i = start; i < limit; i++) {
+                hash = (hash << 1) + gear[data[i] & 0xff];
+                if (i + 1 - start >= MIN_CHUNK && (hash & MASK) == 0) {
+                    cut = i + 1;
+                    break;
+                }
+            }
+            next = cut;
+            return cut - start;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package part1;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * SHA-256 of a stream, computed on its own thread. Bytes passed to
+ * {@link #update} are copied into one of a few pooled buffers and hashed
+ * while the caller moves on to the next block, so hashing overlaps with the
+ * cipher and file I/O instead of adding to them.
+ * Author: Hamish Burke
+ */
+public class ParallelDigest {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFERS = 4;
+
+    private final MessageDigest digest;
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<Block> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final Thread hasher;
+    private byte[] result;
+
+    private record Block(byte[] buffer, int length) {
+    }
+
+    public ParallelDigest(String name) throws NoSuchAlgorithmException {
+        this.digest = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < BUFFERS; i++) {
+            free.add(new byte[BUFFER_SIZE]);
+        }
+        this.hasher = new Thread(this::hash, "sha256-" + name);
+        hasher.setDaemon(true);
+        hasher.start();
+    }
+
+    /**
+     * Queues bytes to be hashed; they may be overwritten as soon as this returns.
+     */
+    public void update(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            while (length > 0) {
+                byte[] buffer = free.take();
+                int n = Math.min(length, buffer.length);
+                System.arraycopy(bytes, offset, buffer, 0, n);
+                full.put(new Block(buffer, n));
+                offset += n;
+                length -= n;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing", e);
+        }
+    }
+
+    /**
+     * Waits for every queued byte to be hashed.
+     *
+     * @return The SHA-256 digest
+     */
+    public byte[] digest() throws IOException {
+        if (result == null) {
+            try {
+                full.put(new Block(null, 0)); // end of stream
+                hasher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while hashing", e);
+            }
+            result = digest.digest();
+        }
+        return result;
+    }
+
+    /**
+     * @return A stream that hashes everything written through it to {@code out}
+     */
+    public OutputStream tee(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                update(bytes, offset, length);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+        };
+    }
+
+    /**
+     * @return A stream that hashes everything read through it from {@code in}
+     */
+    public InputStream tee(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int n = in.read(bytes, offset, length);
+                if (n > 0) {
+                    update(bytes, offset, n);
+                }
+                return n;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Every byte has to pass through read to be hashed
+                byte[] skipped = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+                return Math.max(read(skipped, 0, skipped.length), 0);
+            }
+        };
+    }
+
+    private void hash() {
+        try {
+            Block block;
+            while ((block = full.take()).buffer() != null) {
+                digest.update(block.buffer(), 0, block.length());
+                free.add(block.buffer());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
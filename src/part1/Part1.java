@@ -6,10 +6,12 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +32,7 @@ public class Part1 {
     private static final Logger LOG = Logger.getLogger(Part1.class.getSimpleName());
 
     private static final String ALGORITHM = "AES";
+    private static final int BUFFER_SIZE = 64 * 1024;
     private static final Map<String, String> ciphers = Map.of(
             "CBC", "AES/CBC/PKCS5PADDING",
             "ECB", "AES/ECB/PKCS5PADDING",
@@ -40,7 +43,8 @@ public class Part1 {
 
     public static void main(String[] args) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
         if (args.length < 1) {
-            System.err.println("Usage: java Part1 <enc/dec> -i <inputFile> -o <outputFile> [-k <keyFile>] [-iv <ivFile>] [-m <mode>]");
+            System.err.println("Usage: java Part1 <enc/dec> -i <inputFile> -o <outputFile> [-k <keyFile>] [-iv <ivFile>] [-m <mode>] [--manifest <manifestFile>]"
+                    + "\n       java Part1 <store/restore> -i <inputFile> -s <storeDir> [-o <outputFile>] [-k <keyFile>]");
             return;
         }
 
@@ -50,6 +54,8 @@ public class Part1 {
         String keyFile = null;
         String ivFile = null;
         String mode = "AES/CBC/PKCS5PADDING";
+        String manifestFile = null;
+        String storeDir = null;
 
         for (int i = 1; i < args.length; i++) {
             switch (args[i]) {
@@ -58,6 +64,8 @@ public class Part1 {
                 case "-k", "--key-file" -> keyFile = args[++i];
                 case "-iv", "--initialisation-vector" -> ivFile = args[++i];
                 case "-m", "--mode" -> mode = ciphers.getOrDefault(args[++i], "AES/CBC/PKCS5PADDING");
+                case "--manifest" -> manifestFile = args[++i];
+                case "-s", "--store" -> storeDir = args[++i];
                 default -> {
                     System.err.println("Unknown argument: " + args[i]);
                     return;
@@ -71,7 +79,12 @@ public class Part1 {
         }
 
         if (outputFile == null) {
-            outputFile = operation.equals("enc") ? inputFile + ".enc" : inputFile.replaceFirst("\\.enc$", "") + ".dec";
+            outputFile = switch (operation) {
+                case "enc" -> inputFile + ".enc";
+                case "store" -> inputFile + ".chunks";
+                case "restore" -> inputFile.replaceFirst("\\.chunks$", "") + ".dec";
+                default -> inputFile.replaceFirst("\\.enc$", "") + ".dec";
+            };
         }
 
         Path inputFilePath = Path.of(inputFile);
@@ -81,6 +94,7 @@ public class Part1 {
         }
 
         Path outputFilePath = Path.of(outputFile);
+        Path manifest = manifestFile != null ? Path.of(manifestFile) : null;
 
         SecureRandom sr = new SecureRandom();
         byte[] key = new byte[16];
@@ -128,7 +142,7 @@ public class Part1 {
                 cipher.init(Cipher.ENCRYPT_MODE, skeySpec, iv);
             }
 
-            encryptFiles(cipher, inputFilePath, outputFilePath);
+            encryptFiles(cipher, inputFilePath, outputFilePath, manifest);
         } else if (operation.equals("dec")) {
             if (keyFile == null || ivFile == null) {
                 System.err.println("Key file and IV file are required for decryption.");
@@ -159,19 +173,60 @@ public class Part1 {
                 cipher.init(Cipher.DECRYPT_MODE, skeySpec, iv);
             }
 
-            decryptFiles(cipher, inputFilePath, outputFilePath);
+            decryptFiles(cipher, inputFilePath, outputFilePath, manifest);
+        } else if (operation.equals("store") || operation.equals("restore")) {
+            if (storeDir == null) {
+                System.err.println("Chunk store directory is required.");
+                System.exit(1);
+            }
+
+            if (keyFile != null) {
+                key = Base64.getDecoder().decode(Files.readAllBytes(Path.of(keyFile)));
+                LOG.info("Key loaded from " + keyFile + ": " + Util.bytesToHex(key));
+            } else if (operation.equals("store")) {
+                if (ChunkStore.exists(Path.of(storeDir))) {
+                    System.err.println("Store " + storeDir + " already exists; its key file is required (-k).");
+                    System.exit(1);
+                }
+                sr.nextBytes(key); // Generate random key; keep it for every later backup to the same store
+                Path keyFilePath = inputFilePath.resolveSibling("key.base64");
+                Files.write(keyFilePath, Base64.getEncoder().encode(key));
+                LOG.info("Key saved to " + keyFilePath.toAbsolutePath() + ": " + Util.bytesToHex(key));
+            } else {
+                System.err.println("Key file is required to restore.");
+                System.exit(1);
+            }
+
+            ChunkStore store = new ChunkStore(Path.of(storeDir), key);
+            if (operation.equals("store")) {
+                ChunkStore.Stats stats = store.store(inputFilePath, outputFilePath);
+                System.out.println("Stored " + stats.bytes() + " bytes in " + stats.chunks() + " chunks, " + stats.newChunks()
+                        + " new (" + stats.newBytes() + " bytes written), recipe saved at " + outputFilePath);
+            } else {
+                store.restore(inputFilePath, outputFilePath);
+                System.out.println("Restore complete, saved at " + outputFilePath);
+            }
         } else {
             System.err.println("Unknown operation: " + operation);
             System.exit(1);
         }
     }
 
-    private static void encryptFiles(Cipher cipher, Path inputFile, Path outputFile) throws IOException {
-        try (InputStream fin = Files.newInputStream(inputFile);
-             OutputStream fout = Files.newOutputStream(outputFile);
+    /**
+     * Encrypts in one pass. With a manifest, the plaintext and ciphertext are
+     * also hashed as they stream past, each on its own thread, and a manifest
+     * entry is appended, so neither file has to be read again for checksums.
+     *
+     * @param manifest Manifest to append to, or null for no digests
+     */
+    private static void encryptFiles(Cipher cipher, Path inputFile, Path outputFile, Path manifest) throws IOException, NoSuchAlgorithmException {
+        ParallelDigest plaintextDigest = manifest != null ? new ParallelDigest("plaintext") : null;
+        ParallelDigest ciphertextDigest = manifest != null ? new ParallelDigest("ciphertext") : null;
+        try (InputStream fin = tee(Files.newInputStream(inputFile), plaintextDigest);
+             OutputStream fout = tee(Files.newOutputStream(outputFile), ciphertextDigest);
              CipherOutputStream cipherOut = new CipherOutputStream(fout, cipher)) {
 
-            final byte[] bytes = new byte[1024];
+            final byte[] bytes = new byte[BUFFER_SIZE];
             int length;
             while ((length = fin.read(bytes)) != -1) {
                 cipherOut.write(bytes, 0, length);
@@ -183,14 +238,24 @@ public class Part1 {
 
         LOG.info("Encryption finished, saved at " + outputFile);
         System.out.println("Encryption finished, saved at " + outputFile);
+        if (manifest != null) {
+            writeManifest(manifest, "enc", cipher, plaintextDigest.digest(), ciphertextDigest.digest(), inputFile, outputFile);
+        }
     }
 
-    private static void decryptFiles(Cipher cipher, Path inputFile, Path outputFile) throws IOException {
-        try (InputStream encryptedData = Files.newInputStream(inputFile);
+    /**
+     * Decrypts in one pass, hashing both sides on the way through when a manifest is given.
+     *
+     * @param manifest Manifest to append to, or null for no digests
+     */
+    private static void decryptFiles(Cipher cipher, Path inputFile, Path outputFile, Path manifest) throws IOException, NoSuchAlgorithmException {
+        ParallelDigest ciphertextDigest = manifest != null ? new ParallelDigest("ciphertext") : null;
+        ParallelDigest plaintextDigest = manifest != null ? new ParallelDigest("plaintext") : null;
+        try (InputStream encryptedData = tee(Files.newInputStream(inputFile), ciphertextDigest);
              CipherInputStream decryptStream = new CipherInputStream(encryptedData, cipher);
-             OutputStream decryptedOut = Files.newOutputStream(outputFile)) {
+             OutputStream decryptedOut = tee(Files.newOutputStream(outputFile), plaintextDigest)) {
 
-            final byte[] bytes = new byte[1024];
+            final byte[] bytes = new byte[BUFFER_SIZE];
             int length;
             while ((length = decryptStream.read(bytes)) != -1) {
                 decryptedOut.write(bytes, 0, length);
@@ -205,5 +270,29 @@ public class Part1 {
 
         LOG.info("Decryption complete, saved at " + outputFile);
         System.out.println("Decryption complete, saved at " + outputFile);
+        if (manifest != null) {
+            writeManifest(manifest, "dec", cipher, plaintextDigest.digest(), ciphertextDigest.digest(), outputFile, inputFile);
+        }
+    }
+
+    private static InputStream tee(InputStream in, ParallelDigest digest) {
+        return digest != null ? digest.tee(in) : in;
+    }
+
+    private static OutputStream tee(OutputStream out, ParallelDigest digest) {
+        return digest != null ? digest.tee(out) : out;
+    }
+
+    /**
+     * Appends one tab-separated line: operation, mode, plaintext SHA-256,
+     * ciphertext SHA-256, plaintext file, ciphertext file.
+     */
+    private static void writeManifest(Path manifest, String operation, Cipher cipher, byte[] plaintextDigest, byte[] ciphertextDigest,
+                                      Path plaintextFile, Path ciphertextFile) throws IOException {
+        HexFormat hex = HexFormat.of();
+        String entry = String.join("\t", operation, cipher.getAlgorithm(), hex.formatHex(plaintextDigest), hex.formatHex(ciphertextDigest),
+                plaintextFile.toString(), ciphertextFile.toString()) + System.lineSeparator();
+        Files.writeString(manifest, entry, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        LOG.info("Manifest entry written to " + manifest + ": " + entry.strip());
     }
 }
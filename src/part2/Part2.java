@@ -4,13 +4,14 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,9 +19,7 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public class Part2 {
@@ -28,12 +27,11 @@ public class Part2 {
 
     private static final String ALGORITHM = "AES";
     private static final String CIPHER = "AES/CBC/PKCS5PADDING";
-    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
     private static final int KEY_SIZE = 128;
     private static final int ITERATIONS = 65536;
     private static final int SALT_SIZE = 16;
 
-    public static void main(String[] args) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeySpecException, IOException, InvalidAlgorithmParameterException, InvalidKeyException {
+    public static void main(String[] args) throws NoSuchAlgorithmException, NoSuchPaddingException, IOException, InvalidAlgorithmParameterException, InvalidKeyException {
         if (args.length < 1) {
             System.err.println("Usage: java Part2 <enc/dec> -i <inputFile> -o <outputFile> -p <password>");
             System.exit(1);
@@ -104,10 +102,13 @@ public class Part2 {
         }
     }
 
-    private static byte[] deriveKey(char[] password, byte[] salt) throws NoSuchAlgorithmException, InvalidKeySpecException {
-        PBEKeySpec spec = new PBEKeySpec(password, salt, ITERATIONS, KEY_SIZE);
-        SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KDF_ALGORITHM);
-        return keyFactory.generateSecret(spec).getEncoded();
+    private static byte[] deriveKey(char[] password, byte[] salt) {
+        // Same bytes as SecretKeyFactory's PBKDF2WithHmacSHA256, which UTF-8 encodes the password
+        byte[] passwordBytes = new String(password).getBytes(StandardCharsets.UTF_8);
+        byte[] key = new byte[KEY_SIZE / 8];
+        new Pbkdf2Sha256().deriveKey(passwordBytes, passwordBytes.length, salt, ITERATIONS, key, 0, key.length);
+        Arrays.fill(passwordBytes, (byte) 0);
+        return key;
     }
 
     private static void encryptFiles(Cipher cipher, Path inputFile, Path outputFile, byte[] salt, byte[] initVector) {
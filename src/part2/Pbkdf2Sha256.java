@@ -0,0 +1,138 @@
+package part2;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * PBKDF2-HMAC-SHA256, producing the same bytes as the JDK's
+ * PBKDF2WithHmacSHA256 for UTF-8 encoded passwords.
+ * <p>
+ * The HMAC ipad/opad key blocks are hashed once per password and every
+ * iteration resumes from a copy of those two digest states, so an
+ * iteration costs two SHA-256 compressions instead of the four done by
+ * {@code Mac}. The compressions stay on the JDK's SHA-256, which the JIT
+ * replaces with SHA-NI/AVX2 intrinsics where the CPU has them. Not thread
+ * safe: scratch state is reused between calls.
+ * <p>
+ * This is not allocation-free, by choice. MessageDigest can only resume a
+ * saved state by cloning it, so each iteration allocates two short-lived
+ * clones (384-448 bytes depending on the JIT, 25-29 MB per 65536-iteration
+ * derivation). Part2 derives a single key, so that garbage is harmless and
+ * the intrinsic is worth keeping: the allocation-free int[] engine that
+ * Part4 uses for its long runs is about 3.5x slower on a SHA-NI CPU.
+ * Author: Hamish Burke
+ */
+public class Pbkdf2Sha256 {
+    private static final int BLOCK_SIZE = 64;
+    private static final int HASH_SIZE = 32;
+
+    private final MessageDigest keyDigest = Util.sha256();
+    private final MessageDigest innerPrefix = Util.sha256();
+    private final MessageDigest outerPrefix = Util.sha256();
+    private final byte[] pad = new byte[BLOCK_SIZE];
+    private final byte[] blockIndex = new byte[4];
+    private final byte[] u = new byte[HASH_SIZE];
+    private final byte[] t = new byte[HASH_SIZE];
+
+    /**
+     * Derives {@code outLength} bytes of key material into {@code out}.
+     *
+     * @param password       Password bytes (the JDK uses their UTF-8 encoding)
+     * @param passwordLength Number of bytes of password to use
+     * @param salt           Salt bytes
+     * @param iterations     Iteration count, at least 1
+     * @param out            Destination for the derived key
+     * @param outOffset      Offset into out
+     * @param outLength      Number of bytes to derive
+     */
+    public void deriveKey(byte[] password, int passwordLength, byte[] salt, int iterations,
+                          byte[] out, int outOffset, int outLength) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iteration count must be positive");
+        }
+        initPads(password, passwordLength);
+
+        for (int block = 1; (block - 1) * HASH_SIZE < outLength; block++) {
+            blockIndex[0] = (byte) (block >>> 24);
+            blockIndex[1] = (byte) (block >>> 16);
+            blockIndex[2] = (byte) (block >>> 8);
+            blockIndex[3] = (byte) block;
+
+            // U1 = HMAC(P, S || INT(i))
+            MessageDigest inner = copy(innerPrefix);
+            inner.update(salt);
+            inner.update(blockIndex);
+            digestInto(inner, u);
+            finishHmac();
+            System.arraycopy(u, 0, t, 0, HASH_SIZE);
+
+            // U2..Uc
+            for (int c = 1; c < iterations; c++) {
+                inner = copy(innerPrefix);
+                inner.update(u);
+                digestInto(inner, u);
+                finishHmac();
+                for (int j = 0; j < HASH_SIZE; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+
+            int start = (block - 1) * HASH_SIZE;
+            System.arraycopy(t, 0, out, outOffset + start, Math.min(HASH_SIZE, outLength - start));
+        }
+        Arrays.fill(u, (byte) 0);
+        Arrays.fill(t, (byte) 0);
+    }
+
+    /**
+     * Hashes the ipad and opad key blocks once for this password.
+     */
+    private void initPads(byte[] password, int passwordLength) {
+        Arrays.fill(pad, (byte) 0);
+        if (passwordLength > BLOCK_SIZE) {
+            keyDigest.update(password, 0, passwordLength);
+            digestInto(keyDigest, pad);
+        } else {
+            System.arraycopy(password, 0, pad, 0, passwordLength);
+        }
+
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            pad[i] ^= 0x36;
+        }
+        innerPrefix.reset();
+        innerPrefix.update(pad);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            pad[i] ^= 0x36 ^ 0x5c;
+        }
+        outerPrefix.reset();
+        outerPrefix.update(pad);
+        Arrays.fill(pad, (byte) 0);
+    }
+
+    /**
+     * Replaces {@link #u} (the inner digest) with the outer HMAC digest over it.
+     */
+    private void finishHmac() {
+        MessageDigest outer = copy(outerPrefix);
+        outer.update(u);
+        digestInto(outer, u);
+    }
+
+    private static MessageDigest copy(MessageDigest prefix) {
+        try {
+            return (MessageDigest) prefix.clone();
+        } catch (CloneNotSupportedException e) {
+            // The SUN provider's SHA-256 is always cloneable
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void digestInto(MessageDigest digest, byte[] out) {
+        try {
+            digest.digest(out, 0, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
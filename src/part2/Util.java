@@ -1,5 +1,8 @@
 package part2;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
  *
  * @author Erik Costlow
@@ -19,4 +22,15 @@ public class Util {
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * @return A new SHA-256 digest; every Java platform is required to provide one
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package part4;
+
+/**
+ * An ordered, indexable list of candidate passwords. Indices let the
+ * candidates be split into ranges for worker threads, checkpoints and
+ * other nodes, so every source must give the same candidate for an index.
+ * Author: Hamish Burke
+ */
+public interface CandidateSource {
+
+    /**
+     * @return The number of candidates
+     */
+    long size();
+
+    /**
+     * @return The longest candidate in bytes
+     */
+    int maxLength();
+
+    /**
+     * @return A new cursor; each worker thread needs its own
+     */
+    Cursor cursor();
+
+    /**
+     * Walks the candidates over a reused buffer.
+     */
+    interface Cursor {
+
+        /**
+         * Positions the cursor on the candidate with the given index.
+         *
+         * @param index
+         */
+        void seek(long index);
+
+        /**
+         * Moves to the next candidate.
+         */
+        void advance();
+
+        /**
+         * @return The bytes of the current candidate; only the first {@link #length()} are valid
+         */
+        byte[] candidate();
+
+        int length();
+    }
+}
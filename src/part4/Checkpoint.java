@@ -0,0 +1,114 @@
+package part4;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * Small state file recording which keyspace ranges of a run are finished, so
+ * an interrupted run can be resumed. It is tied to the ciphertext and keyspace
+ * it was written for.
+ * Author: Hamish Burke
+ */
+public class Checkpoint {
+    private final Path path;
+    private final String ciphertextHash;
+    private final String keyspace;
+    private boolean deleted;
+
+    /**
+     * @param path       State file location
+     * @param ciphertext Ciphertext being attacked
+     * @param keyspace   Description of the candidate source, e.g. the type and size
+     */
+    public Checkpoint(Path path, byte[] ciphertext, String keyspace) {
+        this.path = path;
+        this.ciphertextHash = sha256(ciphertext);
+        this.keyspace = keyspace;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Marks every range recorded in the state file as complete in the queue.
+     *
+     * @param queue
+     * @return The number of ranges restored
+     * @throws IOException If the file cannot be read or belongs to a different run
+     */
+    public int restore(WorkQueue queue) throws IOException {
+        Properties state = new Properties();
+        try (Reader in = Files.newBufferedReader(path)) {
+            state.load(in);
+        }
+        if (!ciphertextHash.equals(state.getProperty("ciphertext"))) {
+            throw new IOException("Checkpoint " + path + " was written for a different ciphertext");
+        }
+        if (!keyspace.equals(state.getProperty("keyspace"))) {
+            throw new IOException("Checkpoint " + path + " was written for a different keyspace: "
+                    + state.getProperty("keyspace") + ", not " + keyspace);
+        }
+
+        int restored = 0;
+        for (String range : state.getProperty("completed", "").split(",")) {
+            if (!range.isBlank()) {
+                queue.complete(WorkQueue.Range.parse(range));
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Writes the queue's completed ranges, replacing the previous state file atomically.
+     * Synchronized because the periodic save and the Ctrl-C hook share the temp file;
+     * does nothing once the checkpoint has been deleted.
+     *
+     * @param queue
+     * @throws IOException
+     */
+    public synchronized void save(WorkQueue queue) throws IOException {
+        if (deleted) {
+            return;
+        }
+        List<WorkQueue.Range> ranges = queue.completedRanges();
+        StringJoiner completed = new StringJoiner(",");
+        for (WorkQueue.Range range : ranges) {
+            completed.add(range.toString());
+        }
+
+        Properties state = new Properties();
+        state.setProperty("ciphertext", ciphertextHash);
+        state.setProperty("keyspace", keyspace);
+        state.setProperty("completed", completed.toString());
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp)) {
+            state.store(out, "Part4 checkpoint");
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the state file at the end of a run, for good: a save still queued behind this one does nothing.
+     *
+     * @throws IOException
+     */
+    public synchronized void delete() throws IOException {
+        deleted = true;
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".tmp"));
+        Files.deleteIfExists(path);
+    }
+
+    private static String sha256(byte[] data) {
+        return Util.bytesToHex(Util.sha256().digest(data)).replace(" ", "");
+    }
+}
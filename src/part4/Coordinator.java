@@ -0,0 +1,311 @@
+package part4;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out keyspace ranges from a {@link WorkQueue} to Part4 worker processes over TCP.
+ * <p>
+ * The protocol is one UTF-8 line per message. A worker sends {@code HELLO} and gets
+ * {@code JOB <ciphertext base64> <source options base64> <candidates> <source files base64>},
+ * the options being newline-separated Part4 arguments and the files one
+ * {@code <sha256> <path>} line for each wordlist, rules or training file they name.
+ * Workers rebuild the source themselves and refuse to start unless their
+ * candidate count and files match. A worker then repeats {@code CLAIM}, answered by
+ * {@code RANGE <start> <end>}, {@code WAIT} (nothing free, but ranges are still out)
+ * or {@code STOP}, and reports {@code DONE <start> <end>}, {@code FOUND <password>}
+ * and {@code HEARTBEAT <candidatesTried>}. Ranges held by a worker that disconnects
+ * or misses heartbeats for {@link #HEARTBEAT_TIMEOUT_MS} are handed out again. Once a
+ * password is found, or every range is done, all workers are sent {@code STOP}.
+ * <p>
+ * Workers are not authenticated, so a {@code FOUND} is only believed once the
+ * coordinator has decrypted the ciphertext with it itself.
+ * Author: Hamish Burke
+ */
+public class Coordinator {
+    private static final Logger LOG = Logger.getLogger(Coordinator.class.getSimpleName());
+    public static final long HEARTBEAT_TIMEOUT_MS = 30_000;
+
+    private final ServerSocket server;
+    private final WorkQueue queue;
+    private final byte[] ciphertext;
+    private final String job;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final long startTime = System.nanoTime();
+    private final long startCompleted;
+    private boolean stopped;
+    private String password;
+    private PrintStream metrics;
+
+    /**
+     * @param address    Address to listen on, e.g. loopback or the wildcard address
+     * @param port       Port to listen on, or 0 for any free port
+     * @param queue      Ranges to hand out
+     * @param spec       Candidate source options the workers should build
+     * @param size       Number of candidates the options give
+     * @param files      {@code <sha256> <path>} of each file the options name
+     * @param ciphertext Ciphertext under attack
+     * @throws IOException
+     */
+    public Coordinator(InetAddress address, int port, WorkQueue queue, List<String> spec, long size, List<String> files,
+                       byte[] ciphertext) throws IOException {
+        this.server = new ServerSocket(port, 50, address);
+        this.queue = queue;
+        this.ciphertext = ciphertext;
+        this.job = "JOB " + Base64.getEncoder().encodeToString(ciphertext) + " "
+                + Base64.getEncoder().encodeToString(String.join("\n", spec).getBytes(StandardCharsets.UTF_8)) + " "
+                + size + " " + Base64.getEncoder().encodeToString(String.join("\n", files).getBytes(StandardCharsets.UTF_8));
+        this.startCompleted = queue.completedCount();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Starts accepting workers and checking their heartbeats.
+     */
+    public void start() {
+        if (queue.completedCount() >= queue.total()) {
+            finish(null); // everything was already searched before a resume
+        }
+        Thread acceptor = new Thread(this::accept, "part4-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Thread reaper = new Thread(this::reap, "part4-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * Blocks until a worker finds the password or every range has been searched.
+     *
+     * @return The password, or null if it is not in the keyspace
+     * @throws InterruptedException
+     */
+    public String awaitResult() throws InterruptedException {
+        finished.await();
+        synchronized (this) {
+            return password;
+        }
+    }
+
+    /**
+     * Appends every report to the given CSV file as well.
+     *
+     * @param csvFile
+     * @throws FileNotFoundException
+     */
+    public void writeMetrics(String csvFile) throws FileNotFoundException {
+        metrics = new PrintStream(csvFile);
+        metrics.println("Elapsed (s),Workers,Completed,Tried,Candidates/s (run),Percent Complete");
+    }
+
+    /**
+     * Prints overall progress: percent complete, connected workers, candidates/s and ETA,
+     * and, if enabled, the matching CSV row.
+     */
+    public synchronized void report() {
+        double elapsed = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        long completed = queue.completedCount();
+        double rate = (completed - startCompleted) / elapsed;
+        String eta = rate > 0 ? Progress.formatDuration((long) ((queue.total() - completed) / rate)) : "unknown";
+        long tried = 0;
+        for (Connection connection : connections) {
+            tried += connection.tried;
+        }
+        double percent = 100.0 * completed / queue.total();
+        if (metrics != null) {
+            metrics.printf("%.1f,%d,%d,%d,%.2f,%.4f%n", elapsed, connections.size(), completed, tried, rate, percent);
+            metrics.flush();
+        }
+        System.out.printf("[%s] %.4f%% (%d/%d), %d workers, %d tried, %.1f candidates/s, ETA %s%n",
+                Progress.formatDuration((long) elapsed), percent, completed, queue.total(),
+                connections.size(), tried, rate, eta);
+    }
+
+    public synchronized void close() throws IOException {
+        server.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread thread = new Thread(connection, "part4-worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (SocketException e) {
+                return; // closed
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to accept worker", e);
+            }
+        }
+    }
+
+    private void reap() {
+        while (!server.isClosed()) {
+            try {
+                Thread.sleep(HEARTBEAT_TIMEOUT_MS / 3);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Connection connection : connections) {
+                if (now - connection.lastSeen > HEARTBEAT_TIMEOUT_MS) {
+                    LOG.warning("No heartbeat from " + connection.name + ", reassigning its ranges");
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private synchronized WorkQueue.Range lease(Connection connection) {
+        if (stopped) {
+            return null;
+        }
+        WorkQueue.Range range = queue.claim();
+        if (range != null) {
+            connection.leases.add(range);
+        }
+        return range;
+    }
+
+    private synchronized void done(Connection connection, WorkQueue.Range range) {
+        if (connection.leases.remove(range)) {
+            queue.complete(range);
+        }
+        if (queue.completedCount() >= queue.total()) {
+            finish(null);
+        }
+    }
+
+    private synchronized void release(Connection connection) {
+        for (WorkQueue.Range range : connection.leases) {
+            queue.release(range);
+        }
+        connection.leases.clear();
+    }
+
+    /**
+     * Stops the search if the reported password really decrypts the ciphertext.
+     */
+    private void found(Connection connection, String candidate) {
+        if (Part4.decryptAndCheck(ciphertext, candidate)) {
+            finish(candidate);
+        } else {
+            LOG.warning("Ignoring FOUND from " + connection.name + ": it does not decrypt the ciphertext");
+        }
+    }
+
+    private synchronized void finish(String found) {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        password = found;
+        for (Connection connection : connections) {
+            connection.send("STOP");
+        }
+        finished.countDown();
+    }
+
+    private synchronized boolean stopped() {
+        return stopped;
+    }
+
+    /**
+     * One connected worker process and the ranges it currently holds.
+     */
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final String name;
+        private final PrintWriter out;
+        private final Set<WorkQueue.Range> leases = new HashSet<>(); // guarded by Coordinator.this
+        private volatile long lastSeen = System.currentTimeMillis();
+        private volatile long tried;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.name = String.valueOf(socket.getRemoteSocketAddress());
+            this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lastSeen = System.currentTimeMillis();
+                    String[] message = line.split(" ", 3);
+                    switch (message[0]) {
+                        case "HELLO" -> {
+                            LOG.info("Worker connected: " + name);
+                            send(stopped() ? "STOP" : job);
+                        }
+                        case "CLAIM" -> {
+                            WorkQueue.Range range = lease(this);
+                            if (range != null) {
+                                send("RANGE " + range.start() + " " + range.end());
+                            } else {
+                                send(stopped() ? "STOP" : "WAIT");
+                            }
+                        }
+                        case "DONE" -> done(this, new WorkQueue.Range(Long.parseLong(message[1]), Long.parseLong(message[2])));
+                        case "FOUND" -> found(this, line.substring("FOUND ".length()));
+                        case "HEARTBEAT" -> tried = Long.parseLong(message[1]);
+                        default -> LOG.warning("Unknown message from " + name + ": " + line);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.WARNING, "Lost worker " + name, e);
+            } finally {
+                release(this);
+                connections.remove(this);
+                close();
+                LOG.info("Worker disconnected: " + name);
+            }
+        }
+
+        synchronized void send(String message) {
+            out.print(message + "\n");
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Error closing " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package part4;
+
+/**
+ * Every password over a charset up to a maximum length, shortest first and
+ * lexicographic within a length, numbered densely from 0.
+ * Author: Hamish Burke
+ */
+public class Keyspace implements CandidateSource {
+    private final byte[] charset;
+    private final int maxLength;
+    private final long[] firstIndex; // firstIndex[len] = index of the first password of length len + 1
+
+    public Keyspace(char[] charset, int maxLength) {
+        this.charset = new byte[charset.length];
+        for (int i = 0; i < charset.length; i++) {
+            if (charset[i] > 127) {
+                throw new IllegalArgumentException("Charset must be ASCII");
+            }
+            this.charset[i] = (byte) charset[i];
+        }
+        this.maxLength = maxLength;
+
+        this.firstIndex = new long[maxLength + 1];
+        long count = 1;
+        for (int len = 1; len <= maxLength; len++) {
+            count = Math.multiplyExact(count, charset.length);
+            firstIndex[len] = firstIndex[len - 1] + count;
+        }
+    }
+
+    @Override
+    public long size() {
+        return firstIndex[maxLength];
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Odometer over a reused buffer: advancing to the next password never allocates.
+     */
+    public final class Cursor implements CandidateSource.Cursor {
+        private final int[] digits = new int[maxLength];
+        private final byte[] candidate = new byte[maxLength];
+        private int length;
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside keyspace of " + size());
+            }
+            length = 1;
+            while (index >= firstIndex[length]) {
+                length++;
+            }
+            long offset = index - firstIndex[length - 1];
+            for (int pos = length - 1; pos >= 0; pos--) {
+                digits[pos] = (int) (offset % charset.length);
+                candidate[pos] = charset[digits[pos]];
+                offset /= charset.length;
+            }
+        }
+
+        /**
+         * Moves to the next password, growing the length once every position has wrapped.
+         */
+        @Override
+        public void advance() {
+            for (int pos = length - 1; pos >= 0; pos--) {
+                if (++digits[pos] < charset.length) {
+                    candidate[pos] = charset[digits[pos]];
+                    return;
+                }
+                digits[pos] = 0;
+                candidate[pos] = charset[0];
+            }
+            if (length < maxLength) {
+                digits[length] = 0;
+                candidate[length] = charset[0];
+                length++;
+            }
+        }
+
+        @Override
+        public byte[] candidate() {
+            return candidate;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package part4;
+
+import java.util.Arrays;
+
+/**
+ * Every password over a charset up to a maximum length, shortest first, but
+ * within a length ordered by how likely each character is to follow the one
+ * before it (an order-1 Markov chain) instead of alphabetically. Candidate i
+ * is read as digits of rank: digit 0 at a position is the likeliest character
+ * after the previous one. A threshold keeps only the top k characters for
+ * each predecessor, trading coverage for a much smaller space.
+ * Author: Hamish Burke
+ */
+public class Markov implements CandidateSource {
+    /**
+     * Rough English letter frequency, used when there is no wordlist to train on.
+     */
+    private static final String DEFAULT_ORDER = "aeiorntslcudpmhgbfywkvxzjq1023456789ETAOINSRHLDCUMFPGWYBVKXJQZ";
+
+    private final byte[] charset;
+    private final int maxLength;
+    private final int radix;
+    private final int[][] order; // charset index at order[previous + 1][rank], previous -1 being the start of the word
+    private final long[] firstIndex; // firstIndex[len] = index of the first password of length len + 1
+
+    /**
+     * Orders the charset by a built-in frequency table.
+     */
+    public Markov(char[] charset, int maxLength, int threshold) {
+        this(charset, maxLength, threshold, null);
+    }
+
+    /**
+     * @param charset   Characters that may appear, ASCII
+     * @param maxLength Longest password
+     * @param threshold Characters kept after each predecessor, or 0 for all of them
+     * @param training  Words to count transitions from, or null for the built-in order
+     */
+    public Markov(char[] charset, int maxLength, int threshold, CandidateSource training) {
+        byte[] chars = new byte[charset.length];
+        int[] slot = new int[128];
+        Arrays.fill(slot, -1);
+        for (int i = 0; i < charset.length; i++) {
+            if (charset[i] > 127) {
+                throw new IllegalArgumentException("Charset must be ASCII");
+            }
+            chars[i] = (byte) charset[i];
+            slot[charset[i]] = i;
+        }
+
+        // Transition counts, with a fallback rank that breaks ties and orders unseen characters
+        long[][] counts = new long[chars.length + 1][chars.length];
+        if (training != null && training.size() > 0) {
+            CandidateSource.Cursor cursor = training.cursor();
+            cursor.seek(0);
+            for (long word = 0; word < training.size(); word++) {
+                int previous = -1;
+                for (int i = 0; i < cursor.length(); i++) {
+                    int b = cursor.candidate()[i];
+                    int current = b >= 0 ? slot[b] : -1;
+                    if (current >= 0) {
+                        counts[previous + 1][current]++;
+                    }
+                    previous = current; // a character outside the charset restarts the chain
+                }
+                cursor.advance();
+            }
+        }
+        int[] fallback = new int[chars.length];
+        Arrays.fill(fallback, DEFAULT_ORDER.length());
+        for (int i = 0; i < chars.length; i++) {
+            int rank = DEFAULT_ORDER.indexOf(chars[i]);
+            if (rank >= 0) {
+                fallback[i] = rank;
+            }
+        }
+
+        this.radix = threshold > 0 ? Math.min(threshold, chars.length) : chars.length;
+        this.order = new int[chars.length + 1][radix];
+        for (int previous = 0; previous <= chars.length; previous++) {
+            long[] row = counts[previous];
+            Integer[] ranked = new Integer[chars.length];
+            for (int i = 0; i < ranked.length; i++) {
+                ranked[i] = i;
+            }
+            Arrays.sort(ranked, (a, b) -> row[a] != row[b] ? Long.compare(row[b], row[a])
+                    : fallback[a] != fallback[b] ? Integer.compare(fallback[a], fallback[b]) : Integer.compare(a, b));
+            for (int rank = 0; rank < radix; rank++) {
+                order[previous][rank] = ranked[rank];
+            }
+        }
+        this.charset = chars;
+        this.maxLength = maxLength;
+
+        this.firstIndex = new long[maxLength + 1];
+        long count = 1;
+        for (int len = 1; len <= maxLength; len++) {
+            count = Math.multiplyExact(count, radix);
+            firstIndex[len] = firstIndex[len - 1] + count;
+        }
+    }
+
+    @Override
+    public long size() {
+        return firstIndex[maxLength];
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public CandidateSource.Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Odometer over ranks; a change at one position re-resolves the characters after it.
+     */
+    private final class Cursor implements CandidateSource.Cursor {
+        private final int[] digits = new int[maxLength];
+        private final int[] chars = new int[maxLength]; // index into charset at each position
+        private final byte[] candidate = new byte[maxLength];
+        private int length;
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside keyspace of " + size());
+            }
+            length = 1;
+            while (index >= firstIndex[length]) {
+                length++;
+            }
+            long offset = index - firstIndex[length - 1];
+            for (int pos = length - 1; pos >= 0; pos--) {
+                digits[pos] = (int) (offset % radix);
+                offset /= radix;
+            }
+            resolve(0);
+        }
+
+        @Override
+        public void advance() {
+            for (int pos = length - 1; pos >= 0; pos--) {
+                if (++digits[pos] < radix) {
+                    resolve(pos);
+                    return;
+                }
+                digits[pos] = 0;
+            }
+            if (length < maxLength) {
+                digits[length] = 0;
+                length++;
+            }
+            resolve(0);
+        }
+
+        @Override
+        public byte[] candidate() {
+            return candidate;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        private void resolve(int from) {
+            for (int pos = from; pos < length; pos++) {
+                int previous = pos == 0 ? -1 : chars[pos - 1];
+                chars[pos] = order[previous + 1][digits[pos]];
+                candidate[pos] = charset[chars[pos]];
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package part4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Candidates matching a hashcat-style mask such as {@code ?u?l?l?l?d?d}, one
+ * charset per position: {@code ?l} lowercase, {@code ?u} uppercase,
+ * {@code ?d} digits, {@code ?s} symbols, {@code ?a} all of those, {@code ??}
+ * a literal '?', and any other character stands for itself. The last
+ * position changes fastest.
+ * Author: Hamish Burke
+ */
+public class Mask implements CandidateSource {
+    private static final String LOWER = "abcdefghijklmnopqrstuvwxyz";
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String DIGITS = "0123456789";
+    private static final String SYMBOLS = " !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    private final byte[][] positions;
+    private final long size;
+
+    public Mask(String mask) {
+        List<byte[]> parsed = new ArrayList<>();
+        for (int i = 0; i < mask.length(); i++) {
+            char c = mask.charAt(i);
+            if (c != '?') {
+                parsed.add(ascii(String.valueOf(c)));
+                continue;
+            }
+            if (++i == mask.length()) {
+                throw new IllegalArgumentException("Mask ends with '?': " + mask);
+            }
+            parsed.add(ascii(switch (mask.charAt(i)) {
+                case 'l' -> LOWER;
+                case 'u' -> UPPER;
+                case 'd' -> DIGITS;
+                case 's' -> SYMBOLS;
+                case 'a' -> LOWER + UPPER + DIGITS + SYMBOLS;
+                case '?' -> "?";
+                default -> throw new IllegalArgumentException("Unknown mask charset ?" + mask.charAt(i));
+            }));
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("Empty mask");
+        }
+
+        this.positions = parsed.toArray(new byte[0][]);
+        long count = 1;
+        for (byte[] charset : positions) {
+            count = Math.multiplyExact(count, charset.length);
+        }
+        this.size = count;
+    }
+
+    private static byte[] ascii(String chars) {
+        byte[] bytes = new byte[chars.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            if (chars.charAt(i) > 127) {
+                throw new IllegalArgumentException("Mask must be ASCII");
+            }
+            bytes[i] = (byte) chars.charAt(i);
+        }
+        return bytes;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int maxLength() {
+        return positions.length;
+    }
+
+    @Override
+    public CandidateSource.Cursor cursor() {
+        return new Cursor();
+    }
+
+    private final class Cursor implements CandidateSource.Cursor {
+        private final int[] digits = new int[positions.length];
+        private final byte[] candidate = new byte[positions.length];
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside mask of " + size);
+            }
+            for (int pos = positions.length - 1; pos >= 0; pos--) {
+                digits[pos] = (int) (index % positions[pos].length);
+                candidate[pos] = positions[pos][digits[pos]];
+                index /= positions[pos].length;
+            }
+        }
+
+        @Override
+        public void advance() {
+            for (int pos = positions.length - 1; pos >= 0; pos--) {
+                if (++digits[pos] < positions[pos].length) {
+                    candidate[pos] = positions[pos][digits[pos]];
+                    return;
+                }
+                digits[pos] = 0;
+                candidate[pos] = positions[pos][0];
+            }
+        }
+
+        @Override
+        public byte[] candidate() {
+            return candidate;
+        }
+
+        @Override
+        public int length() {
+            return positions.length;
+        }
+    }
+}
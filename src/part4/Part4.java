@@ -1,131 +1,446 @@
 package part4;
 
-import javax.crypto.*;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.spec.KeySpec;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
 
 public class Part4 {
     private static final Logger LOG = Logger.getLogger(Part4.class.getSimpleName());
-    private static final String ALGORITHM = "AES";
-    private static final String CIPHER = "AES/CBC/PKCS5PADDING";
-    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
-    private static final int KEY_SIZE = 128;
-    private static final int ITERATIONS = 65536; // usually 65536
-    private static final int SALT_SIZE = 16;
-    private static final int IV_SIZE = 16;
+    private static final int MAX_LENGTH = 6;
+    private static final int CHUNK_SIZE = 64; // candidates claimed by a worker at a time
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
 
     public static void main(String[] args) throws Exception {
-        if (args.length < 3) {
-            System.err.println("Usage: java Part4 <ciphertextPath> <type>");
-            return;
+        String usage = "Usage: java Part4 <ciphertextPath> <source> [-c <checkpointFile>] [-r] [-m <metricsCsv>] [-s <reportSeconds>]"
+                + " [--shard <i>/<n> | --serve <port> [--bind <address>]]\n       java Part4 --connect <host>:<port>"
+                + "\nSources: -t <type> [-l <maxLength>] [--markov [--train <wordlist>] [--threshold <k>]]"
+                + " | -w <wordlist> | --mask <mask>, each optionally with --rules <file|builtin>";
+        String ciphertextPath = null;
+        List<String> spec = new ArrayList<>(); // candidate source options, passed on to remote workers as-is
+        String checkpointFile = null;
+        boolean resume = false;
+        String metricsFile = null;
+        int reportSeconds = 10;
+        int shard = 0;
+        int shards = 1;
+        Integer servePort = null;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        String connect = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t", "--type", "-l", "--max-length", "-w", "--wordlist", "--mask", "--rules", "--train", "--threshold" -> {
+                    spec.add(args[i]);
+                    spec.add(args[++i]);
+                }
+                case "--markov" -> spec.add(args[i]);
+                case "-c", "--checkpoint" -> checkpointFile = args[++i];
+                case "-r", "--resume" -> resume = true;
+                case "-m", "--metrics" -> metricsFile = args[++i];
+                case "-s", "--report-seconds" -> reportSeconds = Integer.parseInt(args[++i]);
+                case "--shard" -> {
+                    String value = ++i < args.length ? args[i] : "";
+                    String[] parts = value.split("/");
+                    if (!value.matches("\\d{1,9}/\\d{1,9}")
+                            || Integer.parseInt(parts[1]) < 1 || Integer.parseInt(parts[0]) >= Integer.parseInt(parts[1])) {
+                        System.err.println("Invalid shard: " + value + " (expected <i>/<n> with 0 <= i < n)");
+                        System.err.println(usage);
+                        return;
+                    }
+                    shard = Integer.parseInt(parts[0]);
+                    shards = Integer.parseInt(parts[1]);
+                }
+                case "--serve" -> servePort = Integer.parseInt(args[++i]);
+                case "--bind" -> bindAddress = InetAddress.getByName(args[++i]);
+                case "--connect" -> connect = args[++i];
+                default -> {
+                    if (args[i].startsWith("-") || ciphertextPath != null) {
+                        System.err.println("Unknown argument: " + args[i]);
+                        System.err.println(usage);
+                        return;
+                    }
+                    ciphertextPath = args[i];
+                }
+            }
         }
 
-        String ciphertextPath = args[0];
+        if (connect != null) {
+            int colon = connect.lastIndexOf(':');
+            runWorker(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)), reportSeconds);
+            return;
+        }
 
-        if (!args[1].equals("-t") && !args[1].equals("--type")) {
-            System.err.println("Usage: java Part4 <ciphertextPath> <type>");
+        if (ciphertextPath == null || spec.isEmpty()) {
+            System.err.println(usage);
             return;
         }
-        int type = Integer.parseInt(args[2]);
 
         byte[] ciphertext = Files.readAllBytes(Paths.get(ciphertextPath));
+        try {
+            new Verifier(ciphertext);
+        } catch (IllegalArgumentException e) {
+            System.err.println(ciphertextPath + ": " + e.getMessage());
+            System.exit(1);
+        }
+        SourceOptions options = SourceOptions.parse(spec);
+        CandidateSource candidates = candidateSource(options);
+        Map<String, String> files = sourceFiles(options);
+        WorkQueue queue = new WorkQueue(candidates.size(), CHUNK_SIZE, shard, shards);
+        String description = describeSource(options, files) + ", " + candidates.size() + " candidates"
+                + (shards > 1 ? ", shard " + shard + "/" + shards : "");
+        if (checkpointFile == null) {
+            checkpointFile = ciphertextPath + (shards > 1 ? "." + shard + "of" + shards : "") + ".checkpoint";
+        }
+        Checkpoint checkpoint = new Checkpoint(Path.of(checkpointFile), ciphertext, description);
+
+        if (resume) {
+            if (Files.exists(checkpoint.path())) {
+                int ranges;
+                try {
+                    ranges = checkpoint.restore(queue);
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                    return;
+                }
+                System.out.println("Resuming from " + checkpoint.path() + ": " + queue.completedCount()
+                        + " candidates in " + ranges + " ranges already searched");
+            } else {
+                System.out.println("No checkpoint at " + checkpoint.path() + ", starting from the beginning");
+            }
+        } else if (Files.exists(checkpoint.path())) {
+            // Saving over it would throw away every range it records
+            System.err.println("Checkpoint " + checkpoint.path() + " already exists: pass --resume to continue from it,"
+                    + " or delete it to start again.");
+            System.exit(1);
+        }
+
+        Coordinator coordinator = null;
+        Progress progress = new Progress(queue, WORKERS);
+        Runnable report = progress::report;
+        if (servePort != null) {
+            coordinator = new Coordinator(bindAddress, servePort, queue, spec, candidates.size(), fileList(files), ciphertext);
+            if (metricsFile != null) {
+                coordinator.writeMetrics(metricsFile); // the threads doing the work are on the workers
+            }
+            report = coordinator::report;
+            System.out.println("Coordinating on " + bindAddress.getHostAddress() + ":" + coordinator.port());
+        } else if (metricsFile != null) {
+            progress.writeMetrics(metricsFile);
+        }
+
+        ScheduledExecutorService monitor = monitor(report, reportSeconds);
+        monitor.scheduleAtFixedRate(() -> saveCheckpoint(checkpoint, queue), reportSeconds, reportSeconds, TimeUnit.SECONDS);
 
-        //long startTime = System.currentTimeMillis();
-        String password = bruteForceAttack(ciphertext, type);
-        //long endTime = System.currentTimeMillis();
-        //System.out.println("Time taken: " + (endTime - startTime) + "ms");
+        // Ctrl-C keeps whatever was finished since the last periodic checkpoint
+        Thread saveOnExit = new Thread(() -> saveCheckpoint(checkpoint, queue), "part4-checkpoint");
+        Runtime.getRuntime().addShutdownHook(saveOnExit);
+
+        long startTime = System.nanoTime();
+        String password;
+        if (coordinator != null) {
+            coordinator.start();
+            password = coordinator.awaitResult();
+        } else {
+            try {
+                password = bruteForceAttack(ciphertext, candidates, queue, progress);
+            } catch (IllegalStateException e) {
+                // Not a negative result: keep the checkpoint (saved on exit) and say so
+                LOG.log(Level.SEVERE, "Search aborted", e);
+                System.err.println("Search aborted, not every candidate was tried: " + e.getCause());
+                System.exit(1);
+                return;
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        monitor.shutdown(); // not shutdownNow: interrupting a save would abandon its temp file
+        monitor.awaitTermination(1, TimeUnit.MINUTES);
+        Runtime.getRuntime().removeShutdownHook(saveOnExit);
+        report.run();
+        if (coordinator != null) {
+            coordinator.close();
+        }
+        progress.close();
+        checkpoint.delete(); // the run is over either way
 
         System.out.println(password != null ? "Password found: " + password : "Password not found.");
+        System.out.println("Time taken: " + elapsed / 1_000_000 + "ms");
+    }
+
+    /**
+     * Searches ranges handed out by a coordinator until it says to stop. Range indexes
+     * only mean the same thing if this node builds exactly the coordinator's candidates,
+     * so it refuses to start if its files or candidate count differ.
+     */
+    private static void runWorker(String host, int port, int reportSeconds) throws IOException, InterruptedException {
+        try (RemoteWork remote = RemoteWork.connect(host, port)) {
+            SourceOptions options = SourceOptions.parse(remote.spec());
+            List<String> files = fileList(sourceFiles(options));
+            if (!files.equals(remote.files())) {
+                System.err.println("Refusing to start: source files differ from the coordinator's");
+                System.err.println("Coordinator: " + remote.files());
+                System.err.println("This node:   " + files);
+                return;
+            }
+            CandidateSource candidates = candidateSource(options);
+            if (candidates.size() != remote.size()) {
+                System.err.println("Refusing to start: " + candidates.size() + " candidates here, "
+                        + remote.size() + " on the coordinator");
+                return;
+            }
+            System.out.println("Connected to coordinator " + host + ":" + port + " with " + WORKERS + " threads");
+            Progress progress = new Progress(null, WORKERS);
+            remote.reportTried(progress::total);
+
+            ScheduledExecutorService monitor = monitor(progress::report, reportSeconds);
+            String password = bruteForceAttack(remote.ciphertext(), candidates, remote, progress);
+            monitor.shutdownNow();
+            progress.report();
+
+            System.out.println(password != null ? "Password found: " + password : "Stopped by coordinator.");
+        }
+    }
+
+    private static ScheduledExecutorService monitor(Runnable report, int reportSeconds) {
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "part4-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduleAtFixedRate(report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        return monitor;
+    }
+
+    public static String bruteForceAttack(byte[] ciphertext, int type) throws InterruptedException {
+        Keyspace keyspace = new Keyspace(charset(type), MAX_LENGTH);
+        WorkQueue queue = new WorkQueue(keyspace.size(), CHUNK_SIZE);
+        return bruteForceAttack(ciphertext, keyspace, queue, new Progress(queue, WORKERS));
+    }
+
+    /**
+     * Searches every range the source hands out, one worker thread per core.
+     *
+     * @return The password, or null once the source is exhausted or stopped
+     * @throws IllegalStateException If a worker failed, so the search is incomplete
+     */
+    public static String bruteForceAttack(byte[] ciphertext, CandidateSource candidates, WorkSource source, Progress progress) throws InterruptedException {
+        // Workers claim small chunks in index order, so shorter passwords are still tried first
+        AtomicReference<String> found = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    search(ciphertext, candidates, source, progress, worker, found, failure);
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e); // the other workers stop at their next batch
+                }
+            }, "part4-worker-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        if (found.get() == null && failure.get() != null) {
+            throw new IllegalStateException("A worker failed", failure.get());
+        }
+        return found.get();
     }
 
-    public static String bruteForceAttack(byte[] ciphertext, int type) {
-        char[] charset = switch (type) {
+    private static char[] charset(int type) {
+        return switch (type) {
             case 0 -> "abcdefghijklmnopqrstuvwxyz".toCharArray();
             case 1 -> "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
             case 2 -> "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
             default -> throw new IllegalArgumentException("Invalid type");
         };
+    }
 
-        // Brute-force by trying all possible combinations
-        for (int len = 1; len <= 6; len++) {
-            char[] attempt = new char[len];
-            if (tryPasswords(ciphertext, attempt, charset, 0)) {
-                return new String(attempt);
+    /**
+     * Candidate source options, parsed from the same arguments on the coordinator and on its workers.
+     */
+    private record SourceOptions(Integer type, int maxLength, boolean markov, String train, int threshold,
+                                 String wordlist, String mask, String rules) {
+
+        static SourceOptions parse(List<String> spec) {
+            Integer type = null;
+            int maxLength = MAX_LENGTH;
+            boolean markov = false;
+            String train = null;
+            int threshold = 0;
+            String wordlist = null;
+            String mask = null;
+            String rules = null;
+            for (int i = 0; i < spec.size(); i++) {
+                switch (spec.get(i)) {
+                    case "-t", "--type" -> type = Integer.parseInt(spec.get(++i));
+                    case "-l", "--max-length" -> maxLength = Integer.parseInt(spec.get(++i));
+                    case "--markov" -> markov = true;
+                    case "--train" -> train = spec.get(++i);
+                    case "--threshold" -> threshold = Integer.parseInt(spec.get(++i));
+                    case "-w", "--wordlist" -> wordlist = spec.get(++i);
+                    case "--mask" -> mask = spec.get(++i);
+                    case "--rules" -> rules = spec.get(++i);
+                    default -> throw new IllegalArgumentException("Unknown source option: " + spec.get(i));
+                }
             }
+            return new SourceOptions(type, maxLength, markov, train, threshold, wordlist, mask, rules);
         }
+    }
 
-        return null;
+    /**
+     * Builds the candidates described by the source options: a charset type
+     * (alphabetical, or Markov-ordered with --markov), a wordlist or a mask,
+     * optionally run through mangling rules.
+     */
+    private static CandidateSource candidateSource(SourceOptions options) throws IOException {
+        CandidateSource source;
+        if (options.wordlist() != null) {
+            source = new Wordlist(Path.of(options.wordlist()));
+        } else if (options.mask() != null) {
+            source = new Mask(options.mask());
+        } else if (options.type() != null) {
+            char[] charset = charset(options.type());
+            if (options.markov()) {
+                source = new Markov(charset, options.maxLength(), options.threshold(),
+                        options.train() != null ? new Wordlist(Path.of(options.train())) : null);
+            } else {
+                source = new Keyspace(charset, options.maxLength());
+            }
+        } else {
+            throw new IllegalArgumentException("No candidates: give a type, a wordlist or a mask");
+        }
+        if (options.rules() != null) {
+            source = new Rules(source, options.rules().equals("builtin") ? Rules.DEFAULT : Rules.read(Path.of(options.rules())));
+        }
+        return source;
     }
 
-    public static boolean tryPasswords(byte[] ciphertext, char[] attempt, char[] charset, int pos) {
-        if (pos == attempt.length) {
-            String password = new String(attempt);
-            return decryptAndCheck(ciphertext, password);
+    /**
+     * Describes the candidates by what decides them rather than by how the options
+     * were spelled, so {@code -t 0} resumes a {@code --type 0} checkpoint and a
+     * moved but unchanged wordlist still matches.
+     *
+     * @param files SHA-256 of each file the options name, from {@link #sourceFiles}
+     */
+    private static String describeSource(SourceOptions options, Map<String, String> files) {
+        StringBuilder description = new StringBuilder();
+        if (options.wordlist() != null) {
+            description.append("wordlist ").append(files.get(options.wordlist()));
+        } else if (options.mask() != null) {
+            description.append("mask ").append(options.mask());
         } else {
-            for (char c : charset) {
-                attempt[pos] = c;
-                if (tryPasswords(ciphertext, attempt, charset, pos + 1)) {
-                    return true;
-                }
+            description.append("charset ").append(charset(options.type())).append(", max length ").append(options.maxLength());
+            if (options.markov()) {
+                description.append(", markov threshold ").append(options.threshold()).append(" trained on ")
+                        .append(options.train() != null ? files.get(options.train()) : "English letter frequency");
             }
         }
-        return false;
+        if (options.rules() != null) {
+            description.append(", rules ").append(options.rules().equals("builtin") ? "builtin" : files.get(options.rules()));
+        }
+        return description.toString();
     }
 
-    public static boolean decryptAndCheck(byte[] ciphertext, String password) {
-        try {
-            // Extract salt (first 16 bytes), IV (next 16 bytes), and actual ciphertext
-            byte[] salt = Arrays.copyOfRange(ciphertext, 0, SALT_SIZE);
-            byte[] iv = Arrays.copyOfRange(ciphertext, SALT_SIZE, SALT_SIZE + IV_SIZE);
-            byte[] actualCiphertext = Arrays.copyOfRange(ciphertext, SALT_SIZE + IV_SIZE, ciphertext.length);
-
-            // Generate key from password using PBKDF2 with the extracted salt
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(KDF_ALGORITHM);
-            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, KEY_SIZE);
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
-
-            // Decrypt using the key and IV
-            Cipher cipher = Cipher.getInstance(CIPHER);
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(iv));
-            byte[] decrypted = cipher.doFinal(actualCiphertext);
-
-            // Convert to string and check for readability
-            String decryptedText = new String(decrypted, "UTF-8");
-
-            // Perform both padding and readability checks
-            return isReadableText(decryptedText);
-        } catch (BadPaddingException | IllegalBlockSizeException e) {
-            // These exceptions indicate decryption errors, continue brute-forcing
-            return false;
-        } catch (Exception e) {
-            // Other exceptions should also return false
-            return false;
+    /**
+     * @return The SHA-256 of each wordlist, rules or training file the source options name,
+     * by path, with {@code missing} for a file that does not exist
+     */
+    private static Map<String, String> sourceFiles(SourceOptions options) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        String rules = "builtin".equals(options.rules()) ? null : options.rules();
+        for (String file : Arrays.asList(options.wordlist(), options.train(), rules)) {
+            if (file != null && !files.containsKey(file)) {
+                Path path = Path.of(file);
+                files.put(file, Files.exists(path) ? Util.sha256Hex(path) : "missing");
+            }
         }
+        return files;
     }
 
-    private static boolean isReadableText(String text) {
-        int readableChars = 0;
-        int maxNonPrintable = (int) (text.length() * 0.2);
-        int nonPrintableCount = 0;
+    /**
+     * @return {@code <sha256> <path>} of each file, as sent to remote workers
+     */
+    private static List<String> fileList(Map<String, String> files) {
+        List<String> lines = new ArrayList<>();
+        files.forEach((path, hash) -> lines.add(hash + " " + path));
+        return lines;
+    }
 
-        for (char c : text.toCharArray()) {
-            if (c >= 32 && c <= 126) { // ASCII printable characters
-                readableChars++;
-            } else {
-                nonPrintableCount++;
-                if (nonPrintableCount > maxNonPrintable) {
-                    return false;
+    private static void search(byte[] ciphertext, CandidateSource candidates, WorkSource source, Progress progress,
+                               int worker, AtomicReference<String> found, AtomicReference<Throwable> failure) {
+        Verifier verifier;
+        try {
+            verifier = new Verifier(ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to set up verifier", e);
+        }
+        CandidateSource.Cursor cursor = candidates.cursor();
+        byte[][] batch = new byte[verifier.batchSize()][candidates.maxLength()];
+        int[] lengths = new int[batch.length];
+
+        WorkQueue.Range range;
+        while (found.get() == null && failure.get() == null && (range = source.claim()) != null) {
+            cursor.seek(range.start());
+            for (long index = range.start(); index < range.end(); index += batch.length) {
+                if (found.get() != null || failure.get() != null || source.stopped()) {
+                    return;
+                }
+                int count = (int) Math.min(batch.length, range.end() - index);
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(cursor.candidate(), 0, batch[i], 0, cursor.length());
+                    lengths[i] = cursor.length();
+                    cursor.advance();
+                }
+
+                int hit = verifier.checkBatch(batch, lengths, count);
+                progress.record(worker, count);
+                if (hit >= 0) {
+                    String password = new String(batch[hit], 0, lengths[hit], StandardCharsets.UTF_8);
+                    if (found.compareAndSet(null, password)) {
+                        source.found(password);
+                    }
+                    return;
                 }
             }
+            source.complete(range);
+        }
+    }
+
+    private static void saveCheckpoint(Checkpoint checkpoint, WorkQueue queue) {
+        try {
+            checkpoint.save(queue);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write checkpoint " + checkpoint.path(), e);
+        }
+    }
+
+    public static boolean decryptAndCheck(byte[] ciphertext, String password) {
+        try {
+            byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+            return new Verifier(ciphertext).check(passwordBytes, passwordBytes.length);
+        } catch (Exception e) {
+            // Malformed ciphertexts can never match
+            return false;
         }
-        return true;
     }
 }
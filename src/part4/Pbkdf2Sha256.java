@@ -0,0 +1,229 @@
+package part4;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * PBKDF2-HMAC-SHA256, producing the same bytes as the JDK's
+ * PBKDF2WithHmacSHA256 for UTF-8 encoded passwords.
+ * <p>
+ * The HMAC ipad/opad key blocks are compressed once per password and every
+ * iteration starts from those two saved states, so an iteration costs two
+ * SHA-256 compressions instead of the four done by {@code Mac}. SHA-256 runs
+ * over primitive {@code int[]} state, so a derivation allocates nothing once
+ * the instance exists. That costs the JDK's SHA-NI intrinsic, which cannot
+ * resume a saved state without cloning the digest (about 25 MB of garbage per
+ * candidate, see part2.Pbkdf2Sha256); this engine is about 3.5x slower on a
+ * SHA-NI CPU and on par with the JDK elsewhere. Not thread safe: scratch
+ * state is reused between calls.
+ * Author: Hamish Burke
+ */
+public class Pbkdf2Sha256 {
+    private static final int BLOCK_SIZE = 64;
+    private static final int HASH_SIZE = 32;
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private final MessageDigest keyDigest = Util.sha256(); // only for passwords longer than a block
+    private final int[] innerState = new int[8];
+    private final int[] outerState = new int[8];
+    private final int[] u = new int[8];
+    private final int[] t = new int[8];
+    private final int[] w = new int[64];
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    /**
+     * Derives {@code outLength} bytes of key material into {@code out}.
+     *
+     * @param password       Password bytes (the JDK uses their UTF-8 encoding)
+     * @param passwordLength Number of bytes of password to use
+     * @param salt           Salt bytes
+     * @param iterations     Iteration count, at least 1
+     * @param out            Destination for the derived key
+     * @param outOffset      Offset into out
+     * @param outLength      Number of bytes to derive
+     */
+    public void deriveKey(byte[] password, int passwordLength, byte[] salt, int iterations,
+                          byte[] out, int outOffset, int outLength) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iteration count must be positive");
+        }
+        initPads(password, passwordLength);
+
+        for (int index = 1; (index - 1) * HASH_SIZE < outLength; index++) {
+            // U1 = HMAC(P, S || INT(i))
+            hashSalt(salt, index);
+            finishHmac();
+            System.arraycopy(u, 0, t, 0, 8);
+
+            // U2..Uc: one block each for the inner and outer hash
+            for (int c = 1; c < iterations; c++) {
+                setDigestBlock();
+                compress(innerState, u);
+                finishHmac();
+                for (int j = 0; j < 8; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+
+            int start = (index - 1) * HASH_SIZE;
+            for (int i = 0; i < HASH_SIZE && start + i < outLength; i++) {
+                out[outOffset + start + i] = (byte) (t[i >>> 2] >>> (24 - 8 * (i & 3)));
+            }
+        }
+        Arrays.fill(u, 0);
+        Arrays.fill(t, 0);
+        Arrays.fill(w, 0);
+        Arrays.fill(block, (byte) 0);
+    }
+
+    /**
+     * Compresses the ipad and opad key blocks once for this password.
+     */
+    private void initPads(byte[] password, int passwordLength) {
+        Arrays.fill(block, (byte) 0);
+        if (passwordLength > BLOCK_SIZE) {
+            keyDigest.update(password, 0, passwordLength);
+            try {
+                keyDigest.digest(block, 0, HASH_SIZE);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            System.arraycopy(password, 0, block, 0, passwordLength);
+        }
+
+        for (int i = 0; i < 16; i++) {
+            w[i] = wordAt(block, 4 * i) ^ 0x36363636;
+        }
+        compress(IV, innerState);
+        for (int i = 0; i < 16; i++) {
+            w[i] = wordAt(block, 4 * i) ^ 0x5c5c5c5c;
+        }
+        compress(IV, outerState);
+    }
+
+    /**
+     * Sets {@link #u} to the inner hash of salt || INT(index), streamed a block at a time
+     * after the ipad block and padded as SHA-256 requires.
+     */
+    private void hashSalt(byte[] salt, int index) {
+        System.arraycopy(innerState, 0, u, 0, 8);
+        int n = 0;
+        for (byte b : salt) {
+            n = put(n, b);
+        }
+        n = put(n, (byte) (index >>> 24));
+        n = put(n, (byte) (index >>> 16));
+        n = put(n, (byte) (index >>> 8));
+        n = put(n, (byte) index);
+        n = put(n, (byte) 0x80);
+        while (n != BLOCK_SIZE - 8) {
+            n = put(n, (byte) 0);
+        }
+        long bits = ((long) BLOCK_SIZE + salt.length + 4) * 8;
+        for (int i = 7; i >= 0; i--) {
+            n = put(n, (byte) (bits >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Appends a byte to {@link #block}, compressing it into {@link #u} once full.
+     *
+     * @return The new number of bytes in the block
+     */
+    private int put(int n, byte b) {
+        block[n++] = b;
+        if (n < BLOCK_SIZE) {
+            return n;
+        }
+        for (int i = 0; i < 16; i++) {
+            w[i] = wordAt(block, 4 * i);
+        }
+        compress(u, u);
+        return 0;
+    }
+
+    /**
+     * Replaces {@link #u} (the inner digest) with the outer HMAC digest over it.
+     */
+    private void finishHmac() {
+        setDigestBlock();
+        compress(outerState, u);
+    }
+
+    /**
+     * Puts {@link #u} in w[0..16) as a 32-byte message after a 64-byte prefix, padded.
+     */
+    private void setDigestBlock() {
+        System.arraycopy(u, 0, w, 0, 8);
+        w[8] = 0x80000000;
+        Arrays.fill(w, 9, 15, 0);
+        w[15] = (BLOCK_SIZE + HASH_SIZE) * 8;
+    }
+
+    private static int wordAt(byte[] bytes, int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * One SHA-256 compression of the block in w[0..16) starting from {@code state};
+     * {@code result} may be the same array as {@code state}.
+     */
+    private void compress(int[] state, int[] result) {
+        int[] w = this.w;
+        for (int i = 16; i < 64; i++) {
+            int x = w[i - 15];
+            int y = w[i - 2];
+            int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+            int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = g ^ (e & (f ^ g));
+            int t1 = h + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) | (c & (a | b));
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + s0 + maj;
+        }
+
+        result[0] = state[0] + a;
+        result[1] = state[1] + b;
+        result[2] = state[2] + c;
+        result[3] = state[3] + d;
+        result[4] = state[4] + e;
+        result[5] = state[5] + f;
+        result[6] = state[6] + g;
+        result[7] = state[7] + h;
+    }
+}
@@ -0,0 +1,120 @@
+package part4;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-worker candidate counters, reported as candidates/sec per thread and in
+ * aggregate together with percent complete and ETA. Each report can also be
+ * appended to a CSV file for capacity planning.
+ * Author: Hamish Burke
+ */
+public class Progress {
+    private final WorkQueue queue;
+    private final AtomicLongArray tried;
+    private final long[] lastTried;
+    private final long startTime = System.nanoTime();
+    private long lastTime = startTime;
+    private PrintStream metrics;
+
+    /**
+     * @param queue   Queue whose completed count gives the overall position, or null if it is held elsewhere
+     * @param workers Number of worker threads
+     */
+    public Progress(WorkQueue queue, int workers) {
+        this.queue = queue;
+        this.tried = new AtomicLongArray(workers);
+        this.lastTried = new long[workers];
+    }
+
+    /**
+     * Appends every report to the given CSV file as well.
+     *
+     * @param csvFile
+     * @throws FileNotFoundException
+     */
+    public void writeMetrics(String csvFile) throws FileNotFoundException {
+        metrics = new PrintStream(csvFile);
+        metrics.println("Elapsed (s),Thread,Candidates,Candidates/s (interval),Candidates/s (run),Percent Complete");
+    }
+
+    /**
+     * Called by worker threads after each batch.
+     *
+     * @param worker
+     * @param candidates
+     */
+    public void record(int worker, int candidates) {
+        tried.addAndGet(worker, candidates);
+    }
+
+    /**
+     * Prints one progress line and, if enabled, the matching CSV rows.
+     */
+    public synchronized void report() {
+        long now = System.nanoTime();
+        double interval = Math.max(now - lastTime, 1) / 1e9;
+        double elapsed = Math.max(now - startTime, 1) / 1e9;
+        long completed = queue != null ? queue.completedCount() : 0;
+        long size = queue != null ? queue.total() : 0;
+        double percent = size > 0 ? 100.0 * completed / size : 0;
+
+        StringBuilder perThread = new StringBuilder();
+        long total = 0;
+        long totalInterval = 0;
+        for (int i = 0; i < lastTried.length; i++) {
+            long count = tried.get(i);
+            long delta = count - lastTried[i];
+            lastTried[i] = count;
+            total += count;
+            totalInterval += delta;
+
+            perThread.append(i == 0 ? "" : ", ").append(String.format("t%d %.1f", i, delta / interval));
+            if (metrics != null) {
+                metrics.printf("%.1f,%d,%d,%.2f,%.2f,%.4f%n", elapsed, i, count, delta / interval, count / elapsed, percent);
+            }
+        }
+        lastTime = now;
+
+        double rate = total / elapsed;
+        long remaining = size - completed;
+        String eta = rate > 0 && queue != null ? formatDuration((long) (remaining / rate)) : "unknown";
+        if (metrics != null) {
+            metrics.printf("%.1f,all,%d,%.2f,%.2f,%.4f%n", elapsed, total, totalInterval / interval, rate, percent);
+            metrics.flush();
+        }
+
+        if (queue != null) {
+            System.out.printf("[%s] %.4f%% (%d/%d), %.1f candidates/s [%s], ETA %s%n",
+                    formatDuration((long) elapsed), percent, completed, size, totalInterval / interval, perThread, eta);
+        } else {
+            System.out.printf("[%s] %d tried, %.1f candidates/s [%s]%n",
+                    formatDuration((long) elapsed), total, totalInterval / interval, perThread);
+        }
+    }
+
+    /**
+     * @return Candidates tried in this run
+     */
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < tried.length(); i++) {
+            total += tried.get(i);
+        }
+        return total;
+    }
+
+    public void close() {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    static String formatDuration(long seconds) {
+        if (seconds >= 86400) {
+            return String.format("%dd %02dh", seconds / 86400, (seconds % 86400) / 3600);
+        }
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+}
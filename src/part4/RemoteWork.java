@@ -0,0 +1,191 @@
+package part4;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Worker side of the {@link Coordinator} protocol: claims ranges over TCP,
+ * reports results and sends heartbeats until the coordinator says STOP.
+ * Author: Hamish Burke
+ */
+public class RemoteWork implements WorkSource, Closeable {
+    private static final Logger LOG = Logger.getLogger(RemoteWork.class.getSimpleName());
+    private static final long WAIT_MS = 1000;
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private final Object claimLock = new Object(); // one CLAIM in flight, so replies stay in order
+    private final byte[] ciphertext;
+    private final List<String> spec;
+    private final long size;
+    private final List<String> files;
+    private volatile boolean stopped;
+    private volatile LongSupplier tried = () -> 0;
+
+    private RemoteWork(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+        send("HELLO");
+        String job = in.readLine();
+        if (job == null || !job.startsWith("JOB ")) {
+            throw new IOException("Coordinator did not send a job: " + job);
+        }
+        String[] message = job.split(" ", 5);
+        if (message.length < 5) {
+            throw new IOException("Coordinator sent a job without a candidate count and source files");
+        }
+        this.ciphertext = Base64.getDecoder().decode(message[1]);
+        this.spec = List.of(new String(Base64.getDecoder().decode(message[2]), StandardCharsets.UTF_8).split("\n"));
+        this.size = Long.parseLong(message[3]);
+        String fileList = new String(Base64.getDecoder().decode(message[4]), StandardCharsets.UTF_8);
+        this.files = fileList.isEmpty() ? List.of() : List.of(fileList.split("\n"));
+    }
+
+    /**
+     * Connects to a coordinator and fetches the job.
+     *
+     * @param host
+     * @param port
+     * @return A work source backed by the coordinator
+     * @throws IOException
+     */
+    public static RemoteWork connect(String host, int port) throws IOException {
+        RemoteWork work = new RemoteWork(new Socket(host, port));
+
+        Thread reader = new Thread(work::read, "part4-remote-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        Thread heartbeat = new Thread(work::heartbeat, "part4-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+        return work;
+    }
+
+    public byte[] ciphertext() {
+        return ciphertext;
+    }
+
+    /**
+     * @return The coordinator's candidate source options
+     */
+    public List<String> spec() {
+        return spec;
+    }
+
+    /**
+     * @return The number of candidates the coordinator's source gives
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return {@code <sha256> <path>} of each file the coordinator's source options name
+     */
+    public List<String> files() {
+        return files;
+    }
+
+    /**
+     * @param tried Count of candidates tried on this node, sent with each heartbeat
+     */
+    public void reportTried(LongSupplier tried) {
+        this.tried = tried;
+    }
+
+    @Override
+    public WorkQueue.Range claim() {
+        synchronized (claimLock) {
+            try {
+                while (!stopped) {
+                    send("CLAIM");
+                    String[] reply = replies.take().split(" ");
+                    switch (reply[0]) {
+                        case "RANGE" -> {
+                            return new WorkQueue.Range(Long.parseLong(reply[1]), Long.parseLong(reply[2]));
+                        }
+                        case "WAIT" -> Thread.sleep(WAIT_MS); // another worker's range may be reassigned
+                        default -> stopped = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void complete(WorkQueue.Range range) {
+        send("DONE " + range.start() + " " + range.end());
+    }
+
+    @Override
+    public void found(String password) {
+        send("FOUND " + password);
+    }
+
+    @Override
+    public boolean stopped() {
+        return stopped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        socket.close();
+    }
+
+    private void read() {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals("STOP")) {
+                    stopped = true;
+                }
+                replies.add(line);
+            }
+        } catch (IOException e) {
+            if (!stopped) {
+                LOG.log(Level.WARNING, "Lost connection to coordinator", e);
+            }
+        }
+        // Wake up a claim waiting on a reply that will never come
+        stopped = true;
+        replies.add("STOP");
+    }
+
+    private void heartbeat() {
+        while (!stopped) {
+            send("HEARTBEAT " + tried.getAsLong());
+            try {
+                Thread.sleep(Coordinator.HEARTBEAT_TIMEOUT_MS / 3);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void send(String message) {
+        out.print(message + "\n");
+        out.flush();
+    }
+}
@@ -0,0 +1,300 @@
+package part4;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies hashcat-style mangling rules to another source, rule-major: every
+ * base candidate with the first rule, then every one with the second, so the
+ * most likely rules (list them first) are tried across the whole wordlist
+ * before the rarer ones.
+ * <p>
+ * Supported functions: {@code :} nothing, {@code l} lower, {@code u} upper,
+ * {@code c} capitalise, {@code C} invert capitalise, {@code t} toggle case,
+ * {@code TN} toggle position N, {@code r} reverse, {@code d} duplicate,
+ * {@code f} reflect, {@code $X} append X, {@code ^X} prepend X, {@code [}
+ * drop first, {@code ]} drop last, {@code sXY} replace X with Y and
+ * {@code @X} purge X. Positions are 0-9 then A-Z. Spaces between functions
+ * are ignored; lines starting with # are comments.
+ * Author: Hamish Burke
+ */
+public class Rules implements CandidateSource {
+    /**
+     * Small built-in set for when no rules file is given.
+     */
+    public static final List<String> DEFAULT = List.of(
+            ":", "c", "u", "$1", "c$1", "$1$2$3", "$!", "c$!", "sa@", "so0", "se3", "r", "d", "$2$0$2$6");
+
+    private final CandidateSource words;
+    private final byte[][] rules;
+    private final int maxLength;
+
+    public Rules(CandidateSource words, List<String> rules) {
+        this.words = words;
+        List<byte[]> compiled = new ArrayList<>();
+        int longest = 0;
+        for (String rule : rules) {
+            String trimmed = rule.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            byte[] ops = compile(trimmed);
+            compiled.add(ops);
+            longest = Math.max(longest, maxOutput(ops, words.maxLength()));
+        }
+        if (compiled.isEmpty()) {
+            throw new IllegalArgumentException("No rules given");
+        }
+        this.rules = compiled.toArray(new byte[0][]);
+        this.maxLength = longest;
+    }
+
+    /**
+     * @param file One rule per line
+     * @return The lines of the file
+     * @throws IOException
+     */
+    public static List<String> read(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long size() {
+        return Math.multiplyExact(words.size(), (long) rules.length);
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public CandidateSource.Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Checks the syntax of a rule and strips spaces.
+     */
+    private static byte[] compile(String rule) {
+        StringBuilder ops = new StringBuilder();
+        for (int i = 0; i < rule.length(); i++) {
+            char op = rule.charAt(i);
+            int arguments = switch (op) {
+                case ' ' -> -1;
+                case ':', 'l', 'u', 'c', 'C', 't', 'r', 'd', 'f', '[', ']' -> 0;
+                case '$', '^', '@' -> 1;
+                case 'T' -> {
+                    if (i + 1 < rule.length()) {
+                        position(rule.charAt(i + 1));
+                    }
+                    yield 1;
+                }
+                case 's' -> 2;
+                default -> throw new IllegalArgumentException("Unsupported rule function '" + op + "' in " + rule);
+            };
+            if (arguments < 0) {
+                continue;
+            }
+            if (i + arguments >= rule.length()) {
+                throw new IllegalArgumentException("Rule function '" + op + "' is missing its argument in " + rule);
+            }
+            ops.append(rule, i, i + 1 + arguments);
+            i += arguments;
+        }
+        for (int i = 0; i < ops.length(); i++) {
+            if (ops.charAt(i) > 127) {
+                throw new IllegalArgumentException("Rules must be ASCII: " + rule);
+            }
+        }
+        return ops.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int position(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("Invalid rule position '" + c + "'");
+    }
+
+    /**
+     * @return The longest output the rule can produce from a word of up to {@code length} bytes
+     */
+    private static int maxOutput(byte[] ops, int length) {
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case 'd', 'f' -> length *= 2;
+                case '$', '^' -> length++;
+                default -> {
+                }
+            }
+            i += arguments(ops[i]);
+        }
+        return Math.max(length, 1);
+    }
+
+    private static int arguments(byte op) {
+        return switch (op) {
+            case '$', '^', '@', 'T' -> 1;
+            case 's' -> 2;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Rewrites {@code word[0..length)} in place.
+     *
+     * @return The new length
+     */
+    private static int apply(byte[] ops, byte[] word, int length) {
+        for (int i = 0; i < ops.length; i++) {
+            byte op = ops[i];
+            switch (op) {
+                case 'l' -> {
+                    for (int j = 0; j < length; j++) {
+                        word[j] = lower(word[j]);
+                    }
+                }
+                case 'u' -> {
+                    for (int j = 0; j < length; j++) {
+                        word[j] = upper(word[j]);
+                    }
+                }
+                case 'c', 'C' -> {
+                    for (int j = 0; j < length; j++) {
+                        word[j] = (j == 0) == (op == 'c') ? upper(word[j]) : lower(word[j]);
+                    }
+                }
+                case 't' -> {
+                    for (int j = 0; j < length; j++) {
+                        word[j] = toggle(word[j]);
+                    }
+                }
+                case 'T' -> {
+                    int n = position((char) ops[i + 1]);
+                    if (n < length) {
+                        word[n] = toggle(word[n]);
+                    }
+                }
+                case 'r' -> reverse(word, 0, length);
+                case 'd' -> {
+                    System.arraycopy(word, 0, word, length, length);
+                    length *= 2;
+                }
+                case 'f' -> {
+                    System.arraycopy(word, 0, word, length, length);
+                    reverse(word, length, 2 * length);
+                    length *= 2;
+                }
+                case '$' -> word[length++] = ops[i + 1];
+                case '^' -> {
+                    System.arraycopy(word, 0, word, 1, length++);
+                    word[0] = ops[i + 1];
+                }
+                case '[' -> {
+                    if (length > 0) {
+                        System.arraycopy(word, 1, word, 0, --length);
+                    }
+                }
+                case ']' -> length = Math.max(length - 1, 0);
+                case 's' -> {
+                    for (int j = 0; j < length; j++) {
+                        if (word[j] == ops[i + 1]) {
+                            word[j] = ops[i + 2];
+                        }
+                    }
+                }
+                case '@' -> {
+                    int kept = 0;
+                    for (int j = 0; j < length; j++) {
+                        if (word[j] != ops[i + 1]) {
+                            word[kept++] = word[j];
+                        }
+                    }
+                    length = kept;
+                }
+                default -> {
+                    // ':' leaves the word alone
+                }
+            }
+            i += arguments(op);
+        }
+        return length;
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 32) : b;
+    }
+
+    private static byte toggle(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 32) : lower(b);
+    }
+
+    private static void reverse(byte[] bytes, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+    }
+
+    private final class Cursor implements CandidateSource.Cursor {
+        private final CandidateSource.Cursor word = words.cursor();
+        private final byte[] candidate = new byte[maxLength];
+        private int length;
+        private int rule;
+        private long wordIndex;
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside ruleset of " + size());
+            }
+            rule = (int) (index / words.size());
+            wordIndex = index % words.size();
+            word.seek(wordIndex);
+            mangle();
+        }
+
+        @Override
+        public void advance() {
+            if (++wordIndex == words.size()) {
+                if (rule + 1 == rules.length) {
+                    return; // end of the candidates
+                }
+                rule++;
+                wordIndex = 0;
+                word.seek(0);
+            } else {
+                word.advance();
+            }
+            mangle();
+        }
+
+        @Override
+        public byte[] candidate() {
+            return candidate;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        private void mangle() {
+            System.arraycopy(word.candidate(), 0, candidate, 0, word.length());
+            length = apply(rules[rule], candidate, word.length());
+        }
+    }
+}
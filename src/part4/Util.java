@@ -1,5 +1,12 @@
 package part4;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
  *
  * @author Erik Costlow
@@ -19,4 +26,32 @@ public class Util {
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * @return A new SHA-256 digest; every Java platform is required to provide one
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param file File to hash, read a buffer at a time
+     * @return The file's SHA-256 as lowercase hex
+     * @throws IOException
+     */
+    public static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return bytesToHex(digest.digest()).replace(" ", "").toLowerCase();
+    }
+}
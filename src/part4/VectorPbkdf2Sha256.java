@@ -0,0 +1,257 @@
+package part4;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * PBKDF2-HMAC-SHA256 for a batch of passwords at once, one password per
+ * vector lane, so all lanes run the same SHA-256 rounds in lockstep.
+ * <p>
+ * Uses the incubating Vector API: compile and run with
+ * {@code --add-modules jdk.incubator.vector}. Callers must check the module
+ * is present before touching this class, then {@link #worthwhile()}, and fall
+ * back to {@link Pbkdf2Sha256} otherwise. State arrays are laid out word-major,
+ * {@code [word * lanes + lane]}. Not thread safe.
+ * Author: Hamish Burke
+ */
+public class VectorPbkdf2Sha256 {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int MIN_LANES = 8; // narrower vectors lose to the intrinsified scalar SHA-256
+    private static final int BLOCK_SIZE = 64;
+    private static final int HASH_SIZE = 32;
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private final int lanes = SPECIES.length();
+    private final int[] ivState = new int[8 * lanes];
+    private final int[] innerState = new int[8 * lanes];
+    private final int[] outerState = new int[8 * lanes];
+    private final int[] u = new int[8 * lanes];
+    private final int[] t = new int[8 * lanes];
+    private final int[] w = new int[64 * lanes];
+    private final byte[] pad = new byte[BLOCK_SIZE];
+    private final byte[] tail = new byte[2 * BLOCK_SIZE];
+    private final MessageDigest keyDigest = Util.sha256();
+
+    public VectorPbkdf2Sha256() {
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(ivState, i * lanes, (i + 1) * lanes, IV[i]);
+        }
+    }
+
+    /**
+     * @return True if this CPU's preferred vector shape has enough lanes to beat {@link Pbkdf2Sha256}
+     */
+    public static boolean worthwhile() {
+        return SPECIES.length() >= MIN_LANES;
+    }
+
+    /**
+     * @return The number of passwords derived per call
+     */
+    public int lanes() {
+        return lanes;
+    }
+
+    /**
+     * Derives {@code keyLength} bytes for each of the first {@code count} passwords.
+     *
+     * @param passwords  Password bytes, one array per lane
+     * @param lengths    Number of bytes of each password to use
+     * @param count      Number of passwords, at most {@link #lanes()}
+     * @param salt       Salt shared by every password
+     * @param iterations Iteration count, at least 1
+     * @param keys       Destination for each derived key
+     * @param keyLength  Number of bytes to derive per password
+     */
+    public void deriveKeys(byte[][] passwords, int[] lengths, int count, byte[] salt, int iterations,
+                           byte[][] keys, int keyLength) {
+        if (count > lanes) {
+            throw new IllegalArgumentException("Batch of " + count + " exceeds " + lanes + " lanes");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iteration count must be positive");
+        }
+        initPads(passwords, lengths, count);
+
+        for (int block = 1; (block - 1) * HASH_SIZE < keyLength; block++) {
+            // U1 = HMAC(P, S || INT(i)); the message is the same in every lane
+            System.arraycopy(innerState, 0, u, 0, u.length);
+            int blocks = saltBlocks(salt, block);
+            for (int b = 0; b < blocks; b++) {
+                for (int i = 0; i < 16; i++) {
+                    Arrays.fill(w, i * lanes, (i + 1) * lanes, wordAt(tail, b * BLOCK_SIZE + 4 * i));
+                }
+                compress(u, u);
+            }
+            setDigestBlockPadding();
+            System.arraycopy(u, 0, w, 0, u.length);
+            compress(outerState, u);
+            System.arraycopy(u, 0, t, 0, t.length);
+
+            // U2..Uc: words 8..15 of the message block are the same fixed padding every time
+            for (int c = 1; c < iterations; c++) {
+                System.arraycopy(u, 0, w, 0, u.length);
+                compress(innerState, u);
+                System.arraycopy(u, 0, w, 0, u.length);
+                compress(outerState, u);
+                for (int i = 0; i < t.length; i += lanes) {
+                    IntVector.fromArray(SPECIES, t, i)
+                            .lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, u, i))
+                            .intoArray(t, i);
+                }
+            }
+
+            int start = (block - 1) * HASH_SIZE;
+            for (int lane = 0; lane < count; lane++) {
+                for (int i = 0; i < HASH_SIZE && start + i < keyLength; i++) {
+                    keys[lane][start + i] = (byte) (t[(i >>> 2) * lanes + lane] >>> (24 - 8 * (i & 3)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses each lane's ipad and opad key block; unused lanes get an empty password.
+     */
+    private void initPads(byte[][] passwords, int[] lengths, int count) {
+        for (int pass = 0; pass < 2; pass++) {
+            int mask = pass == 0 ? 0x36363636 : 0x5c5c5c5c;
+            for (int lane = 0; lane < lanes; lane++) {
+                Arrays.fill(pad, (byte) 0);
+                if (lane < count) {
+                    if (lengths[lane] > BLOCK_SIZE) {
+                        keyDigest.update(passwords[lane], 0, lengths[lane]);
+                        try {
+                            keyDigest.digest(pad, 0, HASH_SIZE);
+                        } catch (DigestException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    } else {
+                        System.arraycopy(passwords[lane], 0, pad, 0, lengths[lane]);
+                    }
+                }
+                for (int i = 0; i < 16; i++) {
+                    w[i * lanes + lane] = wordAt(pad, 4 * i) ^ mask;
+                }
+            }
+            compress(ivState, pass == 0 ? innerState : outerState);
+        }
+        Arrays.fill(pad, (byte) 0);
+    }
+
+    /**
+     * Lays out salt || INT(block) with SHA-256 padding, after the 64-byte ipad block, in {@link #tail}.
+     *
+     * @return The number of 64-byte blocks to compress
+     */
+    private int saltBlocks(byte[] salt, int block) {
+        if (salt.length + 4 + 9 > tail.length) {
+            throw new IllegalArgumentException("Salt of " + salt.length + " bytes is too long");
+        }
+        Arrays.fill(tail, (byte) 0);
+        System.arraycopy(salt, 0, tail, 0, salt.length);
+        int n = salt.length;
+        tail[n++] = (byte) (block >>> 24);
+        tail[n++] = (byte) (block >>> 16);
+        tail[n++] = (byte) (block >>> 8);
+        tail[n++] = (byte) block;
+        tail[n++] = (byte) 0x80;
+        int tailLength = n + 8 <= BLOCK_SIZE ? BLOCK_SIZE : 2 * BLOCK_SIZE;
+        long bits = ((long) BLOCK_SIZE + salt.length + 4) * 8;
+        for (int i = 0; i < 8; i++) {
+            tail[tailLength - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        return tailLength / BLOCK_SIZE;
+    }
+
+    /**
+     * Words 8..15 of a block holding a 32-byte message after a 64-byte prefix.
+     */
+    private void setDigestBlockPadding() {
+        Arrays.fill(w, 8 * lanes, 9 * lanes, 0x80000000);
+        Arrays.fill(w, 9 * lanes, 15 * lanes, 0);
+        Arrays.fill(w, 15 * lanes, 16 * lanes, (BLOCK_SIZE + HASH_SIZE) * 8);
+    }
+
+    private static int wordAt(byte[] bytes, int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * One SHA-256 compression per lane of the block in w[0..16) starting from {@code state};
+     * {@code result} may be the same array as {@code state}.
+     */
+    private void compress(int[] state, int[] result) {
+        for (int i = 16; i < 64; i++) {
+            IntVector x = IntVector.fromArray(SPECIES, w, (i - 15) * lanes);
+            IntVector y = IntVector.fromArray(SPECIES, w, (i - 2) * lanes);
+            IntVector s0 = x.lanewise(VectorOperators.ROR, 7)
+                    .lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.ROR, 18))
+                    .lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 3));
+            IntVector s1 = y.lanewise(VectorOperators.ROR, 17)
+                    .lanewise(VectorOperators.XOR, y.lanewise(VectorOperators.ROR, 19))
+                    .lanewise(VectorOperators.XOR, y.lanewise(VectorOperators.LSHR, 10));
+            IntVector.fromArray(SPECIES, w, (i - 16) * lanes)
+                    .add(s0)
+                    .add(IntVector.fromArray(SPECIES, w, (i - 7) * lanes))
+                    .add(s1)
+                    .intoArray(w, i * lanes);
+        }
+
+        IntVector a = IntVector.fromArray(SPECIES, state, 0);
+        IntVector b = IntVector.fromArray(SPECIES, state, lanes);
+        IntVector c = IntVector.fromArray(SPECIES, state, 2 * lanes);
+        IntVector d = IntVector.fromArray(SPECIES, state, 3 * lanes);
+        IntVector e = IntVector.fromArray(SPECIES, state, 4 * lanes);
+        IntVector f = IntVector.fromArray(SPECIES, state, 5 * lanes);
+        IntVector g = IntVector.fromArray(SPECIES, state, 6 * lanes);
+        IntVector h = IntVector.fromArray(SPECIES, state, 7 * lanes);
+
+        for (int i = 0; i < 64; i++) {
+            IntVector s1 = e.lanewise(VectorOperators.ROR, 6)
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 11))
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 25));
+            IntVector ch = g.lanewise(VectorOperators.XOR, e.and(f.lanewise(VectorOperators.XOR, g)));
+            IntVector t1 = h.add(s1).add(ch).add(K[i]).add(IntVector.fromArray(SPECIES, w, i * lanes));
+            IntVector s0 = a.lanewise(VectorOperators.ROR, 2)
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 13))
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 22));
+            IntVector maj = a.and(b).or(c.and(a.or(b)));
+            h = g;
+            g = f;
+            f = e;
+            e = d.add(t1);
+            d = c;
+            c = b;
+            b = a;
+            a = t1.add(s0).add(maj);
+        }
+
+        a.add(IntVector.fromArray(SPECIES, state, 0)).intoArray(result, 0);
+        b.add(IntVector.fromArray(SPECIES, state, lanes)).intoArray(result, lanes);
+        c.add(IntVector.fromArray(SPECIES, state, 2 * lanes)).intoArray(result, 2 * lanes);
+        d.add(IntVector.fromArray(SPECIES, state, 3 * lanes)).intoArray(result, 3 * lanes);
+        e.add(IntVector.fromArray(SPECIES, state, 4 * lanes)).intoArray(result, 4 * lanes);
+        f.add(IntVector.fromArray(SPECIES, state, 5 * lanes)).intoArray(result, 5 * lanes);
+        g.add(IntVector.fromArray(SPECIES, state, 6 * lanes)).intoArray(result, 6 * lanes);
+        h.add(IntVector.fromArray(SPECIES, state, 7 * lanes)).intoArray(result, 7 * lanes);
+    }
+}
@@ -0,0 +1,185 @@
+package part4;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Tests candidate passwords against one Part2 ciphertext (salt | IV | AES/CBC body).
+ * The header is parsed once and the KDF, Cipher and scratch buffers are reused, so
+ * each worker thread should own its own instance. Keys are derived a whole batch at
+ * a time on the Vector API when the JVM was started with jdk.incubator.vector and
+ * the CPU has at least 8 int lanes (AVX2 or wider).
+ * Author: Hamish Burke
+ */
+public class Verifier {
+    private static final String ALGORITHM = "AES";
+    private static final String CIPHER = "AES/CBC/NoPadding";
+    private static final int KEY_SIZE = 16;
+    private static final int ITERATIONS = 65536;
+    private static final int SALT_SIZE = 16;
+    private static final int IV_SIZE = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorPbkdf2Sha256.worthwhile(); // only loaded once the module is known to be there
+
+    private final byte[] ciphertext;
+    private final int bodyOffset;
+    private final int bodyLength;
+    private final byte[] salt;
+    private final IvParameterSpec ivSpec;
+    private final IvParameterSpec tailIvSpec;
+
+    private final Pbkdf2Sha256 kdf = new Pbkdf2Sha256();
+    private final VectorPbkdf2Sha256 batchKdf; // null without the Vector API
+    private final byte[][] keys;
+    private final RawKey[] keySpecs; // one per key buffer, reused for every candidate
+    private final Cipher cipher;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] plaintext;
+
+    public Verifier(byte[] ciphertext) throws GeneralSecurityException {
+        if (ciphertext.length < SALT_SIZE + IV_SIZE + BLOCK_SIZE
+                || (ciphertext.length - SALT_SIZE - IV_SIZE) % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Not a Part2 AES/CBC ciphertext: " + ciphertext.length + " bytes");
+        }
+        this.ciphertext = ciphertext;
+        this.bodyOffset = SALT_SIZE + IV_SIZE;
+        this.bodyLength = ciphertext.length - bodyOffset;
+
+        this.salt = Arrays.copyOf(ciphertext, SALT_SIZE);
+
+        this.ivSpec = new IvParameterSpec(ciphertext, SALT_SIZE, IV_SIZE);
+        // In CBC the last block only depends on the key and the block before it
+        this.tailIvSpec = new IvParameterSpec(ciphertext, ciphertext.length - 2 * BLOCK_SIZE, BLOCK_SIZE);
+
+        this.cipher = Cipher.getInstance(CIPHER);
+        this.plaintext = new byte[bodyLength];
+
+        this.batchKdf = VECTOR_API ? new VectorPbkdf2Sha256() : null;
+        this.keys = new byte[batchSize()][KEY_SIZE];
+        this.keySpecs = new RawKey[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keySpecs[i] = new RawKey(keys[i]);
+        }
+    }
+
+    /**
+     * @return The number of candidates {@link #checkBatch} derives keys for together
+     */
+    public int batchSize() {
+        return batchKdf != null ? batchKdf.lanes() : 1;
+    }
+
+    /**
+     * @param password ASCII password bytes
+     * @param length   Number of bytes of password to use
+     * @return True if the password decrypts the ciphertext to readable text
+     */
+    public boolean check(byte[] password, int length) {
+        kdf.deriveKey(password, length, salt, ITERATIONS, keys[0], 0, KEY_SIZE);
+        return checkKey(keySpecs[0]);
+    }
+
+    /**
+     * @param passwords ASCII password bytes, one array per candidate
+     * @param lengths   Number of bytes of each password to use
+     * @param count     Number of candidates, at most {@link #batchSize()}
+     * @return The index of the first candidate that decrypts to readable text, or -1
+     */
+    public int checkBatch(byte[][] passwords, int[] lengths, int count) {
+        if (batchKdf != null) {
+            batchKdf.deriveKeys(passwords, lengths, count, salt, ITERATIONS, keys, KEY_SIZE);
+        } else {
+            for (int i = 0; i < count; i++) {
+                kdf.deriveKey(passwords[i], lengths[i], salt, ITERATIONS, keys[i], 0, KEY_SIZE);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (checkKey(keySpecs[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean checkKey(RawKey keySpec) {
+        try {
+            // Cheap filter: only a key that yields valid PKCS5 padding is worth a full decrypt
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, tailIvSpec);
+            cipher.doFinal(ciphertext, ciphertext.length - BLOCK_SIZE, BLOCK_SIZE, block, 0);
+            int padding = paddingLength(block);
+            if (padding < 0) {
+                return false;
+            }
+
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
+            cipher.doFinal(ciphertext, bodyOffset, bodyLength, plaintext, 0);
+            return isReadableText(plaintext, bodyLength - padding);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The PKCS5 padding length of the final block, or -1 if the padding is invalid
+     */
+    private static int paddingLength(byte[] lastBlock) {
+        int padding = lastBlock[BLOCK_SIZE - 1] & 0xFF;
+        if (padding < 1 || padding > BLOCK_SIZE) {
+            return -1;
+        }
+        for (int i = BLOCK_SIZE - padding; i < BLOCK_SIZE - 1; i++) {
+            if ((lastBlock[i] & 0xFF) != padding) {
+                return -1;
+            }
+        }
+        return padding;
+    }
+
+    /**
+     * AES key backed by one of the reused key buffers. The provider still copies
+     * the key bytes on each init, but no key object is built per candidate.
+     */
+    private static final class RawKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+        private final byte[] key;
+
+        RawKey(byte[] key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return ALGORITHM;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return key.clone();
+        }
+    }
+
+    private static boolean isReadableText(byte[] text, int length) {
+        int maxNonPrintable = (int) (length * 0.2);
+        int nonPrintableCount = 0;
+
+        for (int i = 0; i < length; i++) {
+            int c = text[i] & 0xFF;
+            if (c < 32 || c > 126) { // ASCII printable characters
+                nonPrintableCount++;
+                if (nonPrintableCount > maxNonPrintable) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
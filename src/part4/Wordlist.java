@@ -0,0 +1,144 @@
+package part4;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Candidates read line by line from a memory-mapped wordlist, in file order.
+ * The words stay in the page cache rather than on the heap; only every
+ * {@value #STRIDE}th line offset is kept so that a cursor can seek quickly.
+ * Lines are taken as raw bytes (UTF-8 for the KDF), a trailing CR is dropped
+ * and anything past {@value #MAX_WORD} bytes is cut off.
+ * Author: Hamish Burke
+ */
+public class Wordlist implements CandidateSource {
+    private static final int SEGMENT_BITS = 30; // map the file in 1 GiB pieces
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    private static final int STRIDE = 1024;
+    private static final int MAX_WORD = 256;
+
+    private final Path path;
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+    private final long lines;
+    private final long[] lineOffsets; // offset of every STRIDEth line
+    private final int maxLength;
+
+    public Wordlist(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_MASK + 1L, fileSize - offset));
+            }
+        }
+
+        // One pass to count lines, sample their offsets and find the longest
+        long count = 0;
+        long[] offsets = new long[16];
+        int longest = 0;
+        long lineStart = 0;
+        for (long pos = 0; pos <= fileSize; pos++) {
+            if (pos == fileSize ? pos > lineStart : byteAt(pos) == '\n') {
+                if (count % STRIDE == 0) {
+                    int slot = (int) (count / STRIDE);
+                    if (slot == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, slot * 2);
+                    }
+                    offsets[slot] = lineStart;
+                }
+                longest = Math.max(longest, (int) Math.min(pos - lineStart, MAX_WORD));
+                count++;
+                lineStart = pos + 1;
+            }
+        }
+        this.lines = count;
+        this.lineOffsets = offsets;
+        this.maxLength = Math.max(longest, 1);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public long size() {
+        return lines;
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public CandidateSource.Cursor cursor() {
+        return new Cursor();
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private final class Cursor implements CandidateSource.Cursor {
+        private final byte[] candidate = new byte[maxLength];
+        private int length;
+        private long next; // offset of the line after the current one
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= lines) {
+                throw new IndexOutOfBoundsException("Line " + index + " outside wordlist of " + lines);
+            }
+            next = lineOffsets[(int) (index / STRIDE)];
+            for (long skip = index % STRIDE; skip > 0; skip--) {
+                read();
+            }
+            read();
+        }
+
+        @Override
+        public void advance() {
+            read();
+        }
+
+        @Override
+        public byte[] candidate() {
+            return candidate;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Loads the line starting at {@link #next} and moves next past it.
+         */
+        private void read() {
+            length = 0;
+            long pos = next;
+            while (pos < fileSize) {
+                byte b = byteAt(pos++);
+                if (b == '\n') {
+                    break;
+                }
+                if (length < maxLength) {
+                    candidate[length] = b;
+                }
+                length++;
+            }
+            length = Math.min(length, maxLength);
+            if (length > 0 && candidate[length - 1] == '\r') {
+                length--;
+            }
+            next = pos;
+        }
+    }
+}
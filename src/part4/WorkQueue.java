@@ -0,0 +1,172 @@
+package part4;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hands out a keyspace as chunk-aligned ranges in index order and remembers
+ * which ranges have been fully searched, skipping any already marked complete.
+ * A queue can be limited to one shard: with n shards, chunk k belongs to shard
+ * k mod n, so every shard still starts with the shortest passwords.
+ * Author: Hamish Burke
+ */
+public class WorkQueue implements WorkSource {
+    private final long size;
+    private final int chunkSize;
+    private final int shard;
+    private final int shards;
+    private final TreeMap<Long, Long> completed = new TreeMap<>(); // merged, start -> end (exclusive)
+    private final ArrayDeque<Range> released = new ArrayDeque<>();
+    private long completedCount;
+    private long next;
+
+    public WorkQueue(long size, int chunkSize) {
+        this(size, chunkSize, 0, 1);
+    }
+
+    /**
+     * @param size      Number of indices in the keyspace
+     * @param chunkSize Indices per chunk
+     * @param shard     This queue's shard, from 0
+     * @param shards    Total number of shards
+     */
+    public WorkQueue(long size, int chunkSize, int shard, int shards) {
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Shard " + shard + " outside 0.." + (shards - 1));
+        }
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /**
+     * A half-open range of keyspace indices.
+     */
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+
+        /**
+         * @param text A range formatted as {@code start-end}
+         * @return The parsed range
+         */
+        public static Range parse(String text) {
+            int dash = text.indexOf('-');
+            if (dash < 0) {
+                throw new IllegalArgumentException("Not a range: " + text);
+            }
+            return new Range(Long.parseLong(text.substring(0, dash).trim()), Long.parseLong(text.substring(dash + 1).trim()));
+        }
+    }
+
+    /**
+     * @return A released range, else the next chunk not yet searched, or null once the keyspace has been handed out
+     */
+    @Override
+    public synchronized Range claim() {
+        if (!released.isEmpty()) {
+            return released.poll();
+        }
+        while (next < size) {
+            long chunk = next / chunkSize;
+            if (chunk % shards != shard) {
+                next = (chunk + Math.floorMod(shard - chunk, shards)) * chunkSize;
+                continue;
+            }
+            Map.Entry<Long, Long> done = completed.floorEntry(next);
+            if (done != null && done.getValue() > next) {
+                next = done.getValue();
+                continue;
+            }
+            long end = Math.min((chunk + 1) * chunkSize, size);
+            Long nextDone = completed.higherKey(next);
+            if (nextDone != null) {
+                end = Math.min(end, nextDone);
+            }
+            Range range = new Range(next, end);
+            next = end;
+            return range;
+        }
+        return null;
+    }
+
+    /**
+     * Hands a claimed range out again, e.g. because the worker holding it died.
+     *
+     * @param range
+     */
+    public synchronized void release(Range range) {
+        released.add(range);
+    }
+
+    /**
+     * Records that every index in the range has been searched.
+     *
+     * @param range
+     */
+    @Override
+    public synchronized void complete(Range range) {
+        long start = range.start();
+        long end = range.end();
+
+        // Absorb any overlapping or adjacent ranges into this one
+        Map.Entry<Long, Long> before = completed.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> after;
+        while ((after = completed.ceilingEntry(start)) != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            completedCount -= after.getValue() - after.getKey();
+            completed.remove(after.getKey());
+        }
+        completed.put(start, end);
+        completedCount += end - start;
+    }
+
+    /**
+     * @return The merged ranges searched so far, in index order
+     */
+    public synchronized List<Range> completedRanges() {
+        List<Range> ranges = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : completed.entrySet()) {
+            ranges.add(new Range(entry.getKey(), entry.getValue()));
+        }
+        return ranges;
+    }
+
+    public synchronized long completedCount() {
+        return completedCount;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The number of indices in this queue's shard
+     */
+    public long total() {
+        long chunks = (size + chunkSize - 1) / chunkSize;
+        if (shard >= chunks) {
+            return 0;
+        }
+        long owned = (chunks - 1 - shard) / shards + 1;
+        long total = owned * chunkSize;
+        if ((chunks - 1) % shards == shard) {
+            total -= chunks * chunkSize - size; // the last chunk is short
+        }
+        return total;
+    }
+}
@@ -0,0 +1,36 @@
+package part4;
+
+/**
+ * Where Part4 workers get keyspace ranges from: the local {@link WorkQueue}
+ * or a coordinator over the network ({@link RemoteWork}).
+ * Author: Hamish Burke
+ */
+public interface WorkSource {
+
+    /**
+     * @return The next range to search, or null when there is nothing left or the search was stopped
+     */
+    WorkQueue.Range claim();
+
+    /**
+     * Records that every candidate in the range was tried without a hit.
+     *
+     * @param range
+     */
+    void complete(WorkQueue.Range range);
+
+    /**
+     * Reports a hit so that other workers can stop.
+     *
+     * @param password
+     */
+    default void found(String password) {
+    }
+
+    /**
+     * @return True once the search should stop, e.g. because another node found the password
+     */
+    default boolean stopped() {
+        return false;
+    }
+}
@@ -0,0 +1,114 @@
+package part1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips through the deduplicating chunk store, and the ways it must refuse to restore.
+ * Author: Hamish Burke
+ */
+class ChunkStoreTest {
+    @TempDir
+    Path dir;
+
+    private final Random random = new Random(20261019);
+
+    @Test
+    void roundTrip() throws IOException, GeneralSecurityException {
+        byte[] data = randomBytes(1_000_000);
+        Path store = dir.resolve("store");
+        assertFalse(ChunkStore.exists(store));
+
+        ChunkStore.Stats stats = new ChunkStore(store, key(1)).store(file("in", data), dir.resolve("in.chunks"));
+        assertTrue(ChunkStore.exists(store));
+        assertEquals(data.length, stats.bytes());
+        assertEquals(stats.chunks(), stats.newChunks());
+
+        new ChunkStore(store, key(1)).restore(dir.resolve("in.chunks"), dir.resolve("out"));
+        assertArrayEquals(data, Files.readAllBytes(dir.resolve("out")));
+    }
+
+    @Test
+    void storingAnEditedFileOnlyWritesTheChangedChunks() throws IOException, GeneralSecurityException {
+        byte[] original = randomBytes(1_000_000);
+        byte[] edited = new byte[original.length + 10];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        System.arraycopy(randomBytes(10), 0, edited, 500_000, 10); // an insertion shifts everything after it
+        System.arraycopy(original, 500_000, edited, 500_010, 500_000);
+
+        ChunkStore store = new ChunkStore(dir.resolve("store"), key(1));
+        ChunkStore.Stats first = store.store(file("v1", original), dir.resolve("v1.chunks"));
+        ChunkStore.Stats second = store.store(file("v2", edited), dir.resolve("v2.chunks"));
+        assertTrue(second.newChunks() <= 2, second.newChunks() + " of " + second.chunks() + " chunks rewritten");
+        assertTrue(second.newBytes() < first.newBytes() / 10, second.newBytes() + " bytes written");
+
+        store.restore(dir.resolve("v1.chunks"), dir.resolve("v1.out"));
+        store.restore(dir.resolve("v2.chunks"), dir.resolve("v2.out"));
+        assertArrayEquals(original, Files.readAllBytes(dir.resolve("v1.out")));
+        assertArrayEquals(edited, Files.readAllBytes(dir.resolve("v2.out")));
+    }
+
+    @Test
+    void rejectsADifferentKey() throws IOException, GeneralSecurityException {
+        new ChunkStore(dir.resolve("store"), key(1)).store(file("in", randomBytes(10_000)), dir.resolve("in.chunks"));
+        assertThrows(IOException.class, () -> new ChunkStore(dir.resolve("store"), key(2)));
+    }
+
+    @Test
+    void rejectsATamperedChunkWithoutLeavingPartOfTheFile() throws IOException, GeneralSecurityException {
+        ChunkStore store = new ChunkStore(dir.resolve("store"), key(1));
+        store.store(file("in", randomBytes(200_000)), dir.resolve("in.chunks"));
+
+        List<Path> chunks;
+        try (Stream<Path> files = Files.walk(dir.resolve("store").resolve("chunks"))) {
+            chunks = files.filter(Files::isRegularFile).sorted().toList();
+        }
+        Path chunk = chunks.get(chunks.size() / 2);
+        byte[] sealed = Files.readAllBytes(chunk);
+        sealed[sealed.length / 2] ^= 1;
+        Files.write(chunk, sealed);
+
+        assertThrows(IOException.class, () -> store.restore(dir.resolve("in.chunks"), dir.resolve("out")));
+        assertFalse(Files.exists(dir.resolve("out")));
+        assertFalse(Files.exists(dir.resolve("out.tmp")));
+    }
+
+    @Test
+    void restoreDoesNotCreateAStore() throws IOException, GeneralSecurityException {
+        Path mistyped = dir.resolve("stroe");
+        ChunkStore store = new ChunkStore(mistyped, key(1));
+        Files.writeString(dir.resolve("in.chunks"), "# part1 chunk recipe v1\n");
+        assertThrows(IOException.class, () -> store.restore(dir.resolve("in.chunks"), dir.resolve("out")));
+        assertFalse(Files.exists(mistyped));
+        assertFalse(Files.exists(dir.resolve("out")));
+    }
+
+    private Path file(String name, byte[] data) throws IOException {
+        return Files.write(dir.resolve(name), data);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] key(int seed) {
+        byte[] key = new byte[16];
+        new Random(seed).nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,84 @@
+package part1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The digests {@code --manifest} records while streaming must equal SHA-256 of the files on disk.
+ * Author: Hamish Burke
+ */
+class ManifestTest {
+    // Several 64 KiB buffers plus a partial one, so blocks are queued and recycled across the pool
+    private static final int SIZE = 9 * 64 * 1024 + 12345;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cbcManifestMatchesTheFiles() throws Exception {
+        assertManifestMatches("CBC");
+    }
+
+    @Test
+    void gcmManifestMatchesTheFiles() throws Exception {
+        assertManifestMatches("GCM");
+    }
+
+    @Test
+    void parallelDigestMatchesMessageDigest() throws Exception {
+        byte[] data = randomBytes(SIZE);
+        ParallelDigest digest = new ParallelDigest("test");
+        // Odd-sized updates, some larger than one pooled buffer
+        Random random = new Random(7);
+        for (int offset = 0; offset < data.length; ) {
+            int n = Math.min(data.length - offset, 1 + random.nextInt(150_000));
+            digest.update(data, offset, n);
+            offset += n;
+        }
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), digest.digest());
+    }
+
+    private void assertManifestMatches(String mode) throws Exception {
+        Path plaintext = Files.write(dir.resolve("plain.bin"), randomBytes(SIZE));
+        Path ciphertext = dir.resolve("plain.bin.enc");
+        Path decrypted = dir.resolve("plain.bin.dec");
+        Path manifest = dir.resolve("manifest.tsv");
+
+        Part1.main(new String[]{"enc", "-i", plaintext.toString(), "-m", mode, "--manifest", manifest.toString()});
+        Part1.main(new String[]{"dec", "-i", ciphertext.toString(), "-o", decrypted.toString(), "-m", mode,
+                "-k", dir.resolve("key.base64").toString(), "-iv", dir.resolve("iv.base64").toString(),
+                "--manifest", manifest.toString()});
+
+        List<String> lines = Files.readAllLines(manifest);
+        assertEquals(2, lines.size());
+        String[] enc = lines.get(0).split("\t");
+        String[] dec = lines.get(1).split("\t");
+        assertEquals("enc", enc[0]);
+        assertEquals("dec", dec[0]);
+
+        assertEquals(sha256(plaintext), enc[2]);
+        assertEquals(sha256(ciphertext), enc[3]);
+        assertEquals(sha256(decrypted), dec[2]);
+        assertEquals(sha256(ciphertext), dec[3]);
+        assertEquals(enc[2], dec[2]);
+    }
+
+    private static String sha256(Path file) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,84 @@
+package part2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.Random;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pbkdf2Sha256 must give the same bytes as the JDK's PBKDF2WithHmacSHA256.
+ * Author: Hamish Burke
+ */
+class Pbkdf2Sha256Test {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 !@#éüßøçñ€中文пароль🔑";
+
+    /**
+     * RFC 7914 section 11, PBKDF2-HMAC-SHA256 with a 64-byte (two block) output.
+     */
+    @Test
+    void rfc7914Vectors() {
+        assertDerives("passwd", "salt", 1,
+                "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                        + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783");
+        assertDerives("Password", "NaCl", 80000,
+                "4ddcd8f60b98be21830cee5ef22701f9641a4418d04c0414aeff08876b34ab56"
+                        + "a1d425a1225833549adb841b51c9b3176a272bdebba1d078478f62b397f33c8d");
+    }
+
+    @Test
+    void matchesJdkOnRandomInputs() throws GeneralSecurityException {
+        Random random = new Random(20261019);
+        SecretKeyFactory jdk = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        Pbkdf2Sha256 kdf = new Pbkdf2Sha256();
+        for (int i = 0; i < 200; i++) {
+            // Passwords past 64 bytes are hashed first; multi-byte characters test the UTF-8 encoding
+            String password = randomPassword(random, 1 + random.nextInt(i % 4 == 0 ? 120 : 20));
+            byte[] salt = new byte[1 + random.nextInt(130)];
+            random.nextBytes(salt);
+            int iterations = 1 + random.nextInt(1000);
+            int keyLength = 1 + random.nextInt(100); // up to four output blocks, not always whole
+
+            byte[] expected = jdk.generateSecret(new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength * 8)).getEncoded();
+            byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+            byte[] actual = new byte[keyLength + 3];
+            kdf.deriveKey(passwordBytes, passwordBytes.length, salt, iterations, actual, 3, keyLength);
+
+            byte[] derived = new byte[keyLength];
+            System.arraycopy(actual, 3, derived, 0, keyLength);
+            assertArrayEquals(expected, derived, "password '" + password + "', " + salt.length + "-byte salt, "
+                    + iterations + " iterations, " + keyLength + " bytes");
+        }
+    }
+
+    @Test
+    void usesOnlyThePasswordLengthGiven() {
+        Pbkdf2Sha256 kdf = new Pbkdf2Sha256();
+        byte[] salt = "salt".getBytes(StandardCharsets.US_ASCII);
+        byte[] exact = new byte[32];
+        byte[] padded = new byte[32];
+        kdf.deriveKey("passwd".getBytes(StandardCharsets.US_ASCII), 6, salt, 1, exact, 0, 32);
+        kdf.deriveKey("passwdXXXX".getBytes(StandardCharsets.US_ASCII), 6, salt, 1, padded, 0, 32);
+        assertArrayEquals(exact, padded);
+    }
+
+    private static void assertDerives(String password, String salt, int iterations, String hex) {
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[64];
+        new Pbkdf2Sha256().deriveKey(passwordBytes, passwordBytes.length, salt.getBytes(StandardCharsets.UTF_8), iterations, out, 0, 64);
+        assertArrayEquals(HexFormat.of().parseHex(hex), out);
+    }
+
+    private static String randomPassword(Random random, int codePoints) {
+        int[] alphabet = ALPHABET.codePoints().toArray();
+        StringBuilder password = new StringBuilder();
+        for (int i = 0; i < codePoints; i++) {
+            password.appendCodePoint(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return password.toString();
+    }
+}
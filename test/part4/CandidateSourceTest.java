@@ -0,0 +1,129 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Chunks, checkpoints and remote workers all start a cursor with seek(i) and
+ * then advance, so for every source seek(i) must land where i advances from 0 do.
+ * Author: Hamish Burke
+ */
+class CandidateSourceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void keyspace() {
+        Keyspace keyspace = new Keyspace("abc".toCharArray(), 4);
+        assertSeekMatchesAdvance(keyspace);
+        assertEquals(3 + 9 + 27 + 81, new HashSet<>(all(keyspace)).size());
+        assertEquals(List.of("a", "b", "c", "aa", "ab"), all(keyspace).subList(0, 5));
+    }
+
+    @Test
+    void mask() {
+        Mask mask = new Mask("?d?u-?s");
+        assertSeekMatchesAdvance(mask);
+        assertEquals(mask.size(), new HashSet<>(all(mask)).size());
+        assertEquals(List.of("0A- ", "0A-!"), all(mask).subList(0, 2));
+    }
+
+    @Test
+    void wordlistPastSeveralSeekStrides() throws IOException {
+        assertSeekMatchesAdvance(new Wordlist(randomWordlist(3000)));
+    }
+
+    @Test
+    void rulesOverAWordlist() throws IOException {
+        assertSeekMatchesAdvance(new Rules(new Wordlist(randomWordlist(200)), Rules.DEFAULT));
+    }
+
+    @Test
+    void rulesOverAMask() {
+        assertSeekMatchesAdvance(new Rules(new Mask("?l?d"), List.of(":", "u", "d", "$!")));
+    }
+
+    @Test
+    void markov() throws IOException {
+        Wordlist training = new Wordlist(randomWordlist(500));
+        assertSeekMatchesAdvance(new Markov("abcdef".toCharArray(), 4, 0, training));
+        assertSeekMatchesAdvance(new Markov("abcdef".toCharArray(), 4, 3, training));
+        assertSeekMatchesAdvance(new Markov("abcdef".toCharArray(), 4, 0));
+    }
+
+    /**
+     * Walks every candidate with one cursor and seeks another to each index,
+     * then checks a few random seeks followed by advances.
+     */
+    static void assertSeekMatchesAdvance(CandidateSource source) {
+        List<String> walked = all(source);
+        assertEquals(source.size(), walked.size());
+
+        CandidateSource.Cursor seeker = source.cursor();
+        for (int i = 0; i < walked.size(); i++) {
+            seeker.seek(i);
+            assertEquals(walked.get(i), text(seeker), "seek(" + i + ")");
+        }
+
+        Random random = new Random(20261019);
+        for (int n = 0; n < 50; n++) {
+            int start = random.nextInt(walked.size());
+            seeker.seek(start);
+            for (int i = start + 1; i < Math.min(start + 40, walked.size()); i++) {
+                seeker.advance();
+                assertEquals(walked.get(i), text(seeker), "seek(" + start + ") then advance to " + i);
+            }
+        }
+    }
+
+    /**
+     * @return Every candidate, in order, read by advancing from index 0
+     */
+    static List<String> all(CandidateSource source) {
+        List<String> candidates = new ArrayList<>();
+        CandidateSource.Cursor cursor = source.cursor();
+        for (long i = 0; i < source.size(); i++) {
+            if (i == 0) {
+                cursor.seek(0);
+            } else {
+                cursor.advance();
+            }
+            candidates.add(text(cursor));
+        }
+        return candidates;
+    }
+
+    static String text(CandidateSource.Cursor cursor) {
+        return new String(cursor.candidate(), 0, cursor.length(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Words of 0-12 letters, some with CRLF endings, and no newline after the last.
+     */
+    private Path randomWordlist(int lines) throws IOException {
+        Random random = new Random(lines);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            int length = random.nextInt(13);
+            for (int j = 0; j < length; j++) {
+                text.append((char) ('a' + random.nextInt(6)));
+            }
+            if (i < lines - 1) {
+                text.append(random.nextInt(4) == 0 ? "\r\n" : "\n");
+            }
+        }
+        Path file = dir.resolve("words-" + lines + ".txt");
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+        return file;
+    }
+}
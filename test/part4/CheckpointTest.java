@@ -0,0 +1,87 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checkpoint files: round trips, refusing other runs, and saves racing each other or a delete.
+ * Author: Hamish Burke
+ */
+class CheckpointTest {
+    private static final byte[] CIPHERTEXT = "ciphertext".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoresCompletedRanges() throws IOException {
+        WorkQueue queue = new WorkQueue(1000, 10);
+        queue.complete(new WorkQueue.Range(0, 100));
+        queue.complete(new WorkQueue.Range(300, 310));
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("run.checkpoint"), CIPHERTEXT, "mask ?d?d?d, 1000 candidates");
+        checkpoint.save(queue);
+
+        WorkQueue resumed = new WorkQueue(1000, 10);
+        assertEquals(2, checkpoint.restore(resumed));
+        assertEquals(queue.completedRanges(), resumed.completedRanges());
+        assertEquals(new WorkQueue.Range(100, 110), resumed.claim());
+    }
+
+    @Test
+    void refusesAnotherCiphertextOrKeyspace() throws IOException {
+        Path path = dir.resolve("run.checkpoint");
+        new Checkpoint(path, CIPHERTEXT, "mask ?d?d?d, 1000 candidates").save(new WorkQueue(1000, 10));
+
+        WorkQueue queue = new WorkQueue(1000, 10);
+        assertThrows(IOException.class, () -> new Checkpoint(path, "other".getBytes(StandardCharsets.US_ASCII),
+                "mask ?d?d?d, 1000 candidates").restore(queue));
+        assertThrows(IOException.class, () -> new Checkpoint(path, CIPHERTEXT, "mask ?l?d?d, 2600 candidates").restore(queue));
+    }
+
+    @Test
+    void concurrentSavesLeaveAWholeFile() throws Exception {
+        WorkQueue queue = new WorkQueue(100_000, 10);
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("run.checkpoint"), CIPHERTEXT, "keyspace");
+        ExecutorService savers = Executors.newFixedThreadPool(4);
+        List<Future<?>> saves = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int chunk = i;
+            saves.add(savers.submit(() -> {
+                queue.complete(new WorkQueue.Range(chunk * 20L, chunk * 20L + 10));
+                checkpoint.save(queue);
+                return null;
+            }));
+        }
+        for (Future<?> save : saves) {
+            save.get(); // rethrows any failed save
+        }
+        savers.shutdown();
+
+        checkpoint.save(queue);
+        WorkQueue resumed = new WorkQueue(100_000, 10);
+        assertEquals(200, checkpoint.restore(resumed));
+        assertEquals(2000, resumed.completedCount());
+    }
+
+    @Test
+    void savesAfterDeleteDoNothing() throws IOException {
+        WorkQueue queue = new WorkQueue(1000, 10);
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("run.checkpoint"), CIPHERTEXT, "keyspace");
+        checkpoint.save(queue);
+        checkpoint.delete();
+        checkpoint.save(queue);
+        assertFalse(checkpoint.path().toFile().exists());
+    }
+}
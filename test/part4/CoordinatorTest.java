@@ -0,0 +1,162 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The coordinator protocol over loopback, with real and scripted workers.
+ * Author: Hamish Burke
+ */
+class CoordinatorTest {
+    private static final List<String> SPEC = List.of("--mask", "?d?d");
+    private static final int CHUNK = 8;
+
+    private byte[] ciphertext;
+    private Mask candidates;
+    private WorkQueue queue;
+    private Coordinator coordinator;
+    private final List<Client> clients = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws GeneralSecurityException, IOException {
+        ciphertext = VerifierAllocationTest.part2Ciphertext("42", "Hello, this is a test file!!!");
+        candidates = new Mask("?d?d");
+        queue = new WorkQueue(candidates.size(), CHUNK);
+        coordinator = new Coordinator(InetAddress.getLoopbackAddress(), 0, queue, SPEC, candidates.size(), List.of(), ciphertext);
+        coordinator.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (Client client : clients) {
+            client.close();
+        }
+        coordinator.close();
+    }
+
+    @Test
+    void workerFindsThePassword() throws IOException, InterruptedException {
+        try (RemoteWork remote = RemoteWork.connect("127.0.0.1", coordinator.port())) {
+            assertEquals(SPEC, remote.spec());
+            assertEquals(candidates.size(), remote.size());
+            assertEquals(List.of(), remote.files());
+
+            assertEquals("42", Part4.bruteForceAttack(remote.ciphertext(), candidates, remote, new Progress(null, 1)));
+        }
+        assertEquals("42", coordinator.awaitResult());
+    }
+
+    @Test
+    void droppedWorkerLeasesAreReassigned() throws IOException, InterruptedException {
+        Client dropped = connect();
+        assertEquals("RANGE 0 8", dropped.request("CLAIM"));
+        dropped.close();
+
+        // Its range comes back once the coordinator notices the disconnect
+        Client other = connect();
+        List<String> claims = new ArrayList<>();
+        for (int i = 0; i < 100 && !claims.contains("RANGE 0 8"); i++) {
+            String reply = other.request("CLAIM");
+            claims.add(reply);
+            if (reply.equals("WAIT")) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(claims.contains("RANGE 0 8"), "claims: " + claims);
+    }
+
+    @Test
+    void everyWorkerIsStoppedByAVerifiedFound() throws IOException, InterruptedException {
+        Client first = connect();
+        Client second = connect();
+        Client reporter = connect();
+
+        reporter.send("FOUND 13"); // does not decrypt the ciphertext, so it is ignored
+        reporter.send("FOUND 42");
+        assertEquals("STOP", first.read());
+        assertEquals("STOP", second.read());
+        assertEquals("STOP", reporter.read());
+        assertEquals("42", coordinator.awaitResult());
+        assertEquals("STOP", connect("STOP").request("CLAIM"));
+    }
+
+    @Test
+    void everyWorkerIsStoppedOnceTheKeyspaceIsDone() throws IOException, InterruptedException {
+        Client idle = connect();
+        Client worker = connect();
+        String reply;
+        while ((reply = worker.request("CLAIM")).startsWith("RANGE")) {
+            worker.send("DONE" + reply.substring("RANGE".length()));
+        }
+        assertEquals("STOP", reply);
+        assertEquals("STOP", idle.read());
+        assertNull(coordinator.awaitResult());
+        assertEquals(queue.total(), queue.completedCount());
+    }
+
+    private Client connect() throws IOException {
+        return connect("JOB ");
+    }
+
+    /**
+     * Connects a scripted worker and checks the start of the reply to its HELLO.
+     */
+    private Client connect(String expected) throws IOException {
+        Client client = new Client(new Socket(InetAddress.getLoopbackAddress(), coordinator.port()));
+        clients.add(client);
+        String job = client.request("HELLO");
+        assertTrue(job.startsWith(expected), job);
+        return client;
+    }
+
+    /**
+     * A worker driven line by line by the test.
+     */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setSoTimeout(10_000);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String message) {
+            out.print(message + "\n");
+            out.flush();
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        String request(String message) throws IOException {
+            send(message);
+            return read();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Markov ordering by trained transition counts, and the size of a thresholded space.
+ * Author: Hamish Burke
+ */
+class MarkovTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void untrainedOrderFollowsLetterFrequency() {
+        assertEquals(List.of("a", "b", "z"), CandidateSourceTest.all(new Markov("zab".toCharArray(), 1, 0)));
+    }
+
+    @Test
+    void trainedOrderFollowsTransitionCounts() throws IOException {
+        // Starts: b 3, a 1. After b: a 2, c 1. After a: b 1. Nothing after c. Ties fall back to letter frequency.
+        Markov markov = new Markov("abc".toCharArray(), 2, 0, training("ba\nba\nbc\nab\n"));
+        List<String> all = CandidateSourceTest.all(markov);
+        assertEquals(List.of("b", "a", "c",
+                "ba", "bc", "bb",
+                "ab", "aa", "ac",
+                "ca", "cc", "cb"), all);
+    }
+
+    @Test
+    void withoutThresholdItReordersTheWholeKeyspace() throws IOException {
+        Markov markov = new Markov("abcd".toCharArray(), 3, 0, training("dab\ncab\nbad\n"));
+        Keyspace keyspace = new Keyspace("abcd".toCharArray(), 3);
+        assertEquals(keyspace.size(), markov.size());
+        assertEquals(new HashSet<>(CandidateSourceTest.all(keyspace)), new HashSet<>(CandidateSourceTest.all(markov)));
+    }
+
+    @Test
+    void thresholdKeepsTheTopCharactersAfterEach() throws IOException {
+        Markov markov = new Markov("abc".toCharArray(), 3, 2, training("ba\nba\nbc\nab\n"));
+        assertEquals(2 + 4 + 8, markov.size());
+        List<String> all = CandidateSourceTest.all(markov);
+        assertEquals(14, new HashSet<>(all).size());
+        Set<String> allowed = Set.of("^b", "^a", "ba", "bc", "ab", "aa", "ca", "cc");
+        for (String candidate : all) {
+            for (int i = 0; i < candidate.length(); i++) {
+                String pair = (i == 0 ? "^" : candidate.substring(i - 1, i)) + candidate.charAt(i);
+                assertTrue(allowed.contains(pair), pair + " in " + candidate);
+            }
+        }
+    }
+
+    private Wordlist training(String words) throws IOException {
+        Path file = Files.createTempFile(dir, "train", ".txt");
+        Files.writeString(file, words, StandardCharsets.US_ASCII);
+        return new Wordlist(file);
+    }
+}
@@ -0,0 +1,73 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.GeneralSecurityException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A search that could not try every candidate must never end as "not found".
+ * Author: Hamish Burke
+ */
+class Part4Test {
+
+    @Test
+    void findsThePassword() throws GeneralSecurityException, InterruptedException {
+        byte[] ciphertext = VerifierAllocationTest.part2Ciphertext("7", "Hello, this is a test file!!!");
+        Mask digits = new Mask("?d");
+        WorkQueue queue = new WorkQueue(digits.size(), 4);
+        assertEquals("7", Part4.bruteForceAttack(ciphertext, digits, queue, new Progress(queue, 1)));
+    }
+
+    @Test
+    void workerFailureAbortsTheSearch() throws GeneralSecurityException {
+        byte[] ciphertext = VerifierAllocationTest.part2Ciphertext("not a digit", "Hello, this is a test file!!!");
+        CandidateSource broken = new CandidateSource() {
+            private final Mask digits = new Mask("?d");
+
+            @Override
+            public long size() {
+                return digits.size();
+            }
+
+            @Override
+            public int maxLength() {
+                return digits.maxLength();
+            }
+
+            @Override
+            public Cursor cursor() {
+                Cursor cursor = digits.cursor();
+                return new Cursor() {
+                    @Override
+                    public void seek(long index) {
+                        if (index >= 4) {
+                            throw new IllegalStateException("Unreadable wordlist");
+                        }
+                        cursor.seek(index);
+                    }
+
+                    @Override
+                    public void advance() {
+                        cursor.advance();
+                    }
+
+                    @Override
+                    public byte[] candidate() {
+                        return cursor.candidate();
+                    }
+
+                    @Override
+                    public int length() {
+                        return cursor.length();
+                    }
+                };
+            }
+        };
+        WorkQueue queue = new WorkQueue(broken.size(), 4);
+        assertThrows(IllegalStateException.class, () -> Part4.bruteForceAttack(ciphertext, broken, queue, new Progress(queue, 1)));
+        assertTrue(queue.completedCount() < broken.size());
+    }
+}
@@ -0,0 +1,90 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Each supported rule function, and the output bound that sizes the cursor buffers.
+ * Author: Hamish Burke
+ */
+class RulesTest {
+
+    @Test
+    void eachFunction() {
+        assertRule(":", "pAssw0rd", "pAssw0rd");
+        assertRule("l", "pAssw0rd", "passw0rd");
+        assertRule("u", "pAssw0rd", "PASSW0RD");
+        assertRule("c", "pAssw0rd", "Passw0rd");
+        assertRule("C", "pAssw0rd", "pASSW0RD");
+        assertRule("t", "pAssw0rd", "PaSSW0RD");
+        assertRule("T2", "pAssw0rd", "pASsw0rd");
+        assertRule("TA", "pAssw0rd", "pAssw0rd"); // position 10 is past the end
+        assertRule("r", "pAssw0rd", "dr0wssAp");
+        assertRule("d", "pAssw0rd", "pAssw0rdpAssw0rd");
+        assertRule("f", "pAssw0rd", "pAssw0rddr0wssAp");
+        assertRule("$1", "pAssw0rd", "pAssw0rd1");
+        assertRule("^!", "pAssw0rd", "!pAssw0rd");
+        assertRule("[", "pAssw0rd", "Assw0rd");
+        assertRule("]", "pAssw0rd", "pAssw0r");
+        assertRule("ss$", "pAssw0rd", "pA$$w0rd");
+        assertRule("@s", "pAssw0rd", "pAw0rd");
+    }
+
+    @Test
+    void functionsChainAndIgnoreSpaces() {
+        assertRule("c $1 $2", "password", "Password12");
+        assertRule("^a ^b", "x", "bax");
+        assertRule("sa@ so0 se3", "awesome", "@w3s0m3");
+        assertRule("[ [ [", "ab", "");
+        assertRule("] ]", "", "");
+    }
+
+    @Test
+    void maxLengthBoundsEveryOutput() {
+        List<String> rules = List.of(":", "d", "f", "dd", "fd$1", "$1$2$3", "^a^b^c", "d[]", "@a", "T9");
+        Rules mangled = new Rules(new Mask("?l?l?l?l"), rules);
+        assertEquals(17, mangled.maxLength()); // "fd$1" on four letters
+        CandidateSource.Cursor cursor = mangled.cursor();
+        cursor.seek(0);
+        for (long i = 0; i < mangled.size(); i++) {
+            assertTrue(cursor.length() <= mangled.maxLength(), i + ": " + CandidateSourceTest.text(cursor));
+            cursor.advance();
+        }
+    }
+
+    @Test
+    void rulesAreTriedRuleMajor() {
+        Rules mangled = new Rules(new Mask("?d"), List.of(":", "$!"));
+        List<String> all = CandidateSourceTest.all(mangled);
+        assertEquals(20, all.size());
+        assertEquals("9", all.get(9));
+        assertEquals("0!", all.get(10));
+    }
+
+    @Test
+    void skipsCommentsAndBlankLines() {
+        assertEquals(2 * 10, new Rules(new Mask("?d"), List.of("# comment", "", "  u  ", "r")).size());
+    }
+
+    @Test
+    void rejectsBadRules() {
+        Mask digits = new Mask("?d");
+        assertThrows(IllegalArgumentException.class, () -> new Rules(digits, List.of("x")));
+        assertThrows(IllegalArgumentException.class, () -> new Rules(digits, List.of("$")));
+        assertThrows(IllegalArgumentException.class, () -> new Rules(digits, List.of("sa")));
+        assertThrows(IllegalArgumentException.class, () -> new Rules(digits, List.of("T!")));
+        assertThrows(IllegalArgumentException.class, () -> new Rules(digits, List.of("# only a comment")));
+    }
+
+    private static void assertRule(String rule, String word, String expected) {
+        // A one-candidate mask of the word itself; an empty word is "x" with its last letter dropped
+        CandidateSource words = word.isEmpty() ? new Rules(new Mask("x"), List.of("]")) : new Mask(word.replace("?", "??"));
+        CandidateSource.Cursor cursor = new Rules(words, List.of(rule)).cursor();
+        cursor.seek(0);
+        assertEquals(expected, CandidateSourceTest.text(cursor), "'" + rule + "' on '" + word + "'");
+    }
+}
@@ -0,0 +1,102 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * VectorPbkdf2Sha256 must give every lane the same bytes as Pbkdf2Sha256.
+ * Needs {@code --add-modules jdk.incubator.vector} to compile and run.
+ * Author: Hamish Burke
+ */
+class VectorPbkdf2Sha256Test {
+    private final Random random = new Random(20261019);
+    private final VectorPbkdf2Sha256 vector = new VectorPbkdf2Sha256();
+    private final Pbkdf2Sha256 scalar = new Pbkdf2Sha256();
+
+    @Test
+    void fullAndPartialBatches() {
+        int lanes = vector.lanes();
+        for (int count : new int[]{lanes, 1, 3, lanes - 1}) {
+            if (count >= 1 && count <= lanes) {
+                assertMatchesScalar(count, randomBytes(16), 100, 16);
+            }
+        }
+    }
+
+    /**
+     * The salt, block index and padding take one 64-byte block up to a 51-byte salt, then two.
+     */
+    @Test
+    void saltsNeedingOneOrTwoTailBlocks() {
+        for (int saltLength : new int[]{1, 16, 51, 52, 60, 115}) {
+            assertMatchesScalar(vector.lanes(), randomBytes(saltLength), 50, 16);
+        }
+    }
+
+    @Test
+    void multiBlockKeys() {
+        for (int keyLength : new int[]{1, 31, 32, 33, 64, 100}) {
+            assertMatchesScalar(vector.lanes(), randomBytes(16), 20, keyLength);
+        }
+    }
+
+    @Test
+    void part2Parameters() {
+        assertMatchesScalar(vector.lanes(), randomBytes(16), 65536, 16);
+    }
+
+    @Test
+    void leavesUnusedLanesAlone() {
+        int lanes = vector.lanes();
+        int[] lengths = new int[lanes];
+        byte[][] passwords = randomPasswords(lengths);
+        byte[][] keys = new byte[lanes][16];
+        vector.deriveKeys(passwords, lengths, 2, randomBytes(16), 10, keys, 16);
+        for (int lane = 2; lane < lanes; lane++) {
+            assertArrayEquals(new byte[16], keys[lane], "lane " + lane);
+        }
+    }
+
+    @Test
+    void verifierOnlyBatchesWithEnoughLanes() throws GeneralSecurityException {
+        Verifier verifier = new Verifier(VerifierAllocationTest.part2Ciphertext("secret", "Hello, this is a test file!!!"));
+        assertEquals(VectorPbkdf2Sha256.worthwhile() ? vector.lanes() : 1, verifier.batchSize());
+    }
+
+    private void assertMatchesScalar(int count, byte[] salt, int iterations, int keyLength) {
+        int[] lengths = new int[vector.lanes()];
+        byte[][] passwords = randomPasswords(lengths);
+        byte[][] keys = new byte[vector.lanes()][keyLength];
+        vector.deriveKeys(passwords, lengths, count, salt, iterations, keys, keyLength);
+
+        for (int lane = 0; lane < count; lane++) {
+            byte[] expected = new byte[keyLength];
+            scalar.deriveKey(passwords[lane], lengths[lane], salt, iterations, expected, 0, keyLength);
+            assertArrayEquals(expected, keys[lane], "lane " + lane + " of " + count + ", " + salt.length + "-byte salt, "
+                    + iterations + " iterations, " + keyLength + "-byte key, " + lengths[lane] + "-byte password");
+        }
+    }
+
+    /**
+     * One password per entry of {@code lengths}, from empty to past the 64-byte
+     * HMAC block, each in a buffer with a few spare bytes after it.
+     */
+    private byte[][] randomPasswords(int[] lengths) {
+        byte[][] passwords = new byte[lengths.length][];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = i == 0 ? 0 : i % 3 == 0 ? 65 + random.nextInt(60) : 1 + random.nextInt(64);
+            passwords[i] = randomBytes(lengths[i] + random.nextInt(4));
+        }
+        return passwords;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,143 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bytes allocated per candidate on the worker's steady-state path, measured
+ * with the HotSpot per-thread allocation counter after a JIT warm-up.
+ * Author: Hamish Burke
+ */
+class VerifierAllocationTest {
+    private static final int WARMUP = 200;
+    private static final int MEASURED = 50;
+
+    private static byte[] ciphertext;
+    private static final byte[] WRONG = "zzzz".getBytes(StandardCharsets.US_ASCII);
+
+    @BeforeAll
+    static void encrypt() throws GeneralSecurityException {
+        ciphertext = part2Ciphertext("secret", "Hello, this is a test file!!!");
+    }
+
+    @Test
+    void reusedKeysStillVerify() throws GeneralSecurityException {
+        Verifier verifier = new Verifier(ciphertext);
+        byte[] right = "secret".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(verifier.check(WRONG, WRONG.length));
+        assertTrue(verifier.check(right, right.length));
+        assertFalse(verifier.check(WRONG, WRONG.length));
+
+        byte[][] batch = new byte[verifier.batchSize()][];
+        int[] lengths = new int[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i == batch.length - 1 ? right : WRONG;
+            lengths[i] = batch[i].length;
+        }
+        assertEquals(batch.length - 1, verifier.checkBatch(batch, lengths, batch.length));
+    }
+
+    @Test
+    void verifyingAddsLittleToTheKdf() throws GeneralSecurityException {
+        Verifier verifier = new Verifier(ciphertext);
+        Pbkdf2Sha256 kdf = new Pbkdf2Sha256();
+        byte[] salt = new byte[16];
+        byte[] key = new byte[16];
+        for (int i = 0; i < WARMUP; i++) {
+            verifier.check(WRONG, WRONG.length);
+            kdf.deriveKey(WRONG, WRONG.length, salt, 65536, key, 0, key.length);
+        }
+
+        long kdfBytes = allocated(() -> kdf.deriveKey(WRONG, WRONG.length, salt, 65536, key, 0, key.length)) / MEASURED;
+        long checkBytes = allocated(() -> verifier.check(WRONG, WRONG.length)) / MEASURED;
+        System.out.printf("Pbkdf2Sha256: %d bytes/candidate, Verifier.check: %d bytes/candidate, verify overhead: %d bytes%n",
+                kdfBytes, checkBytes, checkBytes - kdfBytes);
+        // Only the provider's per-init key and IV copies and AES key schedule are left
+        assertTrue(checkBytes - kdfBytes < 2048, "Verify overhead of " + (checkBytes - kdfBytes) + " bytes per candidate");
+    }
+
+    @Test
+    void scalarKdfAllocatesNothing() {
+        Pbkdf2Sha256 kdf = new Pbkdf2Sha256();
+        byte[] salt = new byte[16];
+        byte[] key = new byte[16];
+        for (int i = 0; i < WARMUP; i++) {
+            kdf.deriveKey(WRONG, WRONG.length, salt, 65536, key, 0, key.length);
+        }
+
+        long perCandidate = allocated(() -> kdf.deriveKey(WRONG, WRONG.length, salt, 65536, key, 0, key.length)) / MEASURED;
+        System.out.printf("Pbkdf2Sha256: %d bytes/candidate%n", perCandidate);
+        assertTrue(perCandidate < 64, perCandidate + " bytes per candidate");
+    }
+
+    @Test
+    void vectorBatchesAllocateAlmostNothing() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "needs jdk.incubator.vector");
+        VectorPbkdf2Sha256 kdf = new VectorPbkdf2Sha256();
+        byte[][] passwords = new byte[kdf.lanes()][];
+        int[] lengths = new int[kdf.lanes()];
+        for (int i = 0; i < passwords.length; i++) {
+            passwords[i] = WRONG;
+            lengths[i] = WRONG.length;
+        }
+        byte[] salt = new byte[16];
+        byte[][] keys = new byte[kdf.lanes()][16];
+        for (int i = 0; i < WARMUP / 4; i++) {
+            kdf.deriveKeys(passwords, lengths, passwords.length, salt, 65536, keys, 16);
+        }
+
+        long perCandidate = allocated(() -> kdf.deriveKeys(passwords, lengths, passwords.length, salt, 65536, keys, 16))
+                / MEASURED / kdf.lanes();
+        System.out.printf("VectorPbkdf2Sha256: %d bytes/candidate%n", perCandidate);
+        assertTrue(perCandidate < 1024, perCandidate + " bytes per candidate");
+    }
+
+    /**
+     * @return Bytes allocated by this thread over {@link #MEASURED} runs
+     */
+    static long allocated(Runnable candidate) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED; i++) {
+            candidate.run();
+        }
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+
+    /**
+     * @return salt | IV | AES/CBC/PKCS5 body, as written by Part2
+     */
+    static byte[] part2Ciphertext(String password, String plaintext) throws GeneralSecurityException {
+        byte[] salt = new byte[16];
+        byte[] iv = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            salt[i] = (byte) i;
+            iv[i] = (byte) (0xA0 + i);
+        }
+        byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec(password.toCharArray(), salt, 65536, 128)).getEncoded();
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        byte[] body = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+        byte[] out = new byte[32 + body.length];
+        System.arraycopy(salt, 0, out, 0, 16);
+        System.arraycopy(iv, 0, out, 16, 16);
+        System.arraycopy(body, 0, out, 32, body.length);
+        return out;
+    }
+}
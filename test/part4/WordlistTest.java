@@ -0,0 +1,64 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Line splitting in Wordlist: one candidate per line, as raw bytes.
+ * Author: Hamish Burke
+ */
+class WordlistTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitsLinesAndDropsCarriageReturns() throws IOException {
+        Wordlist words = wordlist("alpha\r\nbeta\n\r\n\ngamma\r\n");
+        assertEquals(List.of("alpha", "beta", "", "", "gamma"), CandidateSourceTest.all(words));
+    }
+
+    @Test
+    void keepsAFinalLineWithoutNewline() throws IOException {
+        assertEquals(List.of("one", "two"), CandidateSourceTest.all(wordlist("one\ntwo")));
+        assertEquals(List.of("one", "two"), CandidateSourceTest.all(wordlist("one\ntwo\n")));
+    }
+
+    @Test
+    void emptyFileHasNoCandidates() throws IOException {
+        Wordlist words = wordlist("");
+        assertEquals(0, words.size());
+        assertEquals(1, words.maxLength());
+    }
+
+    @Test
+    void truncatesLongLines() throws IOException {
+        String longLine = "x".repeat(300);
+        Wordlist words = wordlist("short\n" + longLine + "\nafter");
+        assertEquals(256, words.maxLength());
+        assertEquals(List.of("short", "x".repeat(256), "after"), CandidateSourceTest.all(words));
+    }
+
+    @Test
+    void keepsUtf8Bytes() throws IOException {
+        Path file = dir.resolve("utf8.txt");
+        Files.writeString(file, "pässwörd\n密码\n", StandardCharsets.UTF_8);
+        Wordlist words = new Wordlist(file);
+        CandidateSource.Cursor cursor = words.cursor();
+        cursor.seek(1);
+        assertEquals("密码", new String(cursor.candidate(), 0, cursor.length(), StandardCharsets.UTF_8));
+        assertEquals("pässwörd".getBytes(StandardCharsets.UTF_8).length, words.maxLength());
+    }
+
+    private Wordlist wordlist(String text) throws IOException {
+        Path file = Files.createTempFile(dir, "words", ".txt");
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+        return new Wordlist(file);
+    }
+}
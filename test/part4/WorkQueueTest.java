@@ -0,0 +1,100 @@
+package part4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * WorkQueue must hand out every index of its shard exactly once and skip what a checkpoint marked done.
+ * Author: Hamish Burke
+ */
+class WorkQueueTest {
+
+    @Test
+    void shardsPartitionTheKeyspace() {
+        for (long size : new long[]{0, 1, 63, 64, 65, 1000, 1024}) {
+            for (int shards = 1; shards <= 5; shards++) {
+                int[] claimed = new int[(int) size];
+                long total = 0;
+                for (int shard = 0; shard < shards; shard++) {
+                    WorkQueue queue = new WorkQueue(size, 64, shard, shards);
+                    long count = 0;
+                    WorkQueue.Range range;
+                    while ((range = queue.claim()) != null) {
+                        assertEquals(shard, range.start() / 64 % shards, "range " + range + " in shard " + shard);
+                        for (long i = range.start(); i < range.end(); i++) {
+                            claimed[(int) i]++;
+                        }
+                        count += range.length();
+                    }
+                    assertEquals(count, queue.total(), "total of shard " + shard + "/" + shards + " of " + size);
+                    total += count;
+                }
+                assertEquals(size, total);
+                for (int i = 0; i < size; i++) {
+                    assertEquals(1, claimed[i], "index " + i + " with " + shards + " shards");
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsShardsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkQueue(100, 10, 3, 3));
+        assertThrows(IllegalArgumentException.class, () -> new WorkQueue(100, 10, -1, 3));
+    }
+
+    @Test
+    void completeMergesRanges() {
+        WorkQueue queue = new WorkQueue(1000, 10);
+        queue.complete(new WorkQueue.Range(20, 30));
+        queue.complete(new WorkQueue.Range(40, 50));
+        queue.complete(new WorkQueue.Range(30, 40)); // adjacent on both sides
+        queue.complete(new WorkQueue.Range(45, 60)); // overlapping
+        queue.complete(new WorkQueue.Range(100, 110));
+        queue.complete(new WorkQueue.Range(20, 30)); // again
+        assertEquals(List.of(new WorkQueue.Range(20, 60), new WorkQueue.Range(100, 110)), queue.completedRanges());
+        assertEquals(50, queue.completedCount());
+
+        queue.complete(new WorkQueue.Range(0, 200)); // swallows both
+        assertEquals(List.of(new WorkQueue.Range(0, 200)), queue.completedRanges());
+        assertEquals(200, queue.completedCount());
+    }
+
+    @Test
+    void resumeSkipsCompletedRanges() {
+        WorkQueue queue = new WorkQueue(100, 10);
+        queue.complete(new WorkQueue.Range(0, 25));
+        queue.complete(new WorkQueue.Range(40, 60));
+        queue.complete(new WorkQueue.Range(95, 100));
+
+        assertEquals(new WorkQueue.Range(25, 30), queue.claim());
+        assertEquals(new WorkQueue.Range(30, 40), queue.claim());
+        assertEquals(new WorkQueue.Range(60, 70), queue.claim());
+        assertEquals(new WorkQueue.Range(70, 80), queue.claim());
+        assertEquals(new WorkQueue.Range(80, 90), queue.claim());
+        assertEquals(new WorkQueue.Range(90, 95), queue.claim());
+        assertNull(queue.claim());
+    }
+
+    @Test
+    void releasedRangesAreHandedOutAgain() {
+        WorkQueue queue = new WorkQueue(30, 10);
+        WorkQueue.Range first = queue.claim();
+        queue.claim();
+        queue.release(first);
+        assertEquals(first, queue.claim());
+        assertEquals(new WorkQueue.Range(20, 30), queue.claim());
+        assertNull(queue.claim());
+    }
+
+    @Test
+    void rangesRoundTripThroughText() {
+        WorkQueue.Range range = new WorkQueue.Range(123, 4567);
+        assertEquals(range, WorkQueue.Range.parse(range.toString()));
+        assertThrows(IllegalArgumentException.class, () -> WorkQueue.Range.parse("123"));
+    }
+}